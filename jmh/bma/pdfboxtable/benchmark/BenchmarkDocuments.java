@@ -0,0 +1,105 @@
+package bma.pdfboxtable.benchmark;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import bma.pdfboxtable.pdf.PageablePdf;
+import bma.pdfboxtable.table.Table;
+import bma.pdfboxtable.table.TableColumn;
+import bma.pdfboxtable.table.TextAlignment;
+import bma.pdfboxtable.table.TextVerticalAlignment;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Documents and tables shared by the benchmarks.
+ *
+ * @author Bogdan Aldea
+ */
+final class BenchmarkDocuments {
+    static final int ROWS = 5000;
+    static final String SHORT_TEXT = "Item 42";
+    static final String LONG_TEXT = "Fancy product with a very long name which has to be wrapped on more lines";
+
+    private BenchmarkDocuments() {
+    }
+
+    static PageablePdf createPdf() {
+        PageablePdf pdf = new PageablePdf(PDPage.PAGE_SIZE_A4.getWidth(), PDPage.PAGE_SIZE_A4.getHeight());
+        pdf.setFooterLines(Arrays.asList("This document is a benchmark of table rendering."));
+        pdf.setContentLeftPadding(20f);
+        pdf.setContentTopPadding(10f);
+        pdf.setContentBottomPadding(40f);
+        pdf.setIncludePageNumber(true);
+        pdf.setCurrentPositionAtStartOfThePage();
+        return pdf;
+    }
+
+    static List<TableColumn> createColumns(int numberOfColumns, boolean overlap) {
+        List<TableColumn> columns = new ArrayList<>();
+        if (overlap) {
+            TableColumn product = new TableColumn("", 100F);
+            product.setOverlapNextColumn(true);
+            columns.add(product);
+            columns.add(new TableColumn(60F, TextAlignment.RIGHT, TextVerticalAlignment.BOTTOM));
+            columns.add(new TableColumn(50F, TextAlignment.RIGHT, TextVerticalAlignment.BOTTOM));
+            return columns;
+        }
+
+        float width = 550F / numberOfColumns;
+        for (int i = 0; i < numberOfColumns; i++) {
+            columns.add(new TableColumn("Column " + i, width, i % 2 == 0 ? TextAlignment.LEFT : TextAlignment.RIGHT));
+        }
+        return columns;
+    }
+
+    /*
+     * The rows are streamed, so the table content doesn't count in the allocation of the benchmark.
+     */
+    static Table createTable(List<TableColumn> columns, final String[] row, final int numberOfRows,
+                             boolean drawGrid) {
+        Iterator<String[]> rows = new Iterator<String[]>() {
+            private int rowNumber;
+
+            @Override
+            public boolean hasNext() {
+                return rowNumber < numberOfRows;
+            }
+
+            @Override
+            public String[] next() {
+                rowNumber++;
+                return row;
+            }
+        };
+
+        Table table = new Table(columns, rows);
+        table.setDrawHeaders(true);
+        table.setCellInsidePadding(3f);
+        table.setDrawGrid(drawGrid);
+        return table;
+    }
+
+    /*
+     * Output which only counts the bytes, so the benchmarks measure the document and not the disk.
+     */
+    static class CountingNullOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
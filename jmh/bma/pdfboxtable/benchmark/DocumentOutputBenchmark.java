@@ -0,0 +1,106 @@
+package bma.pdfboxtable.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bma.pdfboxtable.pdf.PageablePdf;
+import bma.pdfboxtable.table.TableColumn;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static bma.pdfboxtable.benchmark.BenchmarkDocuments.ROWS;
+import static bma.pdfboxtable.benchmark.BenchmarkDocuments.SHORT_TEXT;
+
+/**
+ * Benchmark of closing (header and footer) and saving a document with a table of
+ * {@value BenchmarkDocuments#ROWS} rows.
+ *
+ * A document can be closed only once, so each closeDocument operation gets a new document drawn before it is
+ * measured. The drawing is not timed, but its allocation is part of the allocation reported by the gc profiler for
+ * closeDocument. The same closed document is saved by all the save operations.
+ *
+ * @author Bogdan Aldea
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class DocumentOutputBenchmark {
+
+    /**
+     * Document with a drawn table, which is not closed yet.
+     */
+    @State(Scope.Thread)
+    public static class DrawnDocument {
+        PageablePdf pdf;
+
+        @Setup(Level.Invocation)
+        public void draw() throws IOException {
+            pdf = drawTable();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws IOException {
+            pdf.close();
+        }
+    }
+
+    /**
+     * Closed document, ready to be saved.
+     */
+    @State(Scope.Thread)
+    public static class ClosedDocument {
+        PageablePdf pdf;
+
+        @Setup
+        public void draw() throws IOException {
+            pdf = drawTable();
+            pdf.closeDocument();
+        }
+
+        @TearDown
+        public void close() throws IOException {
+            pdf.close();
+        }
+    }
+
+    /**
+     * @return number of pages of the document
+     */
+    @Benchmark
+    public int closeDocument(DrawnDocument document) throws IOException {
+        document.pdf.closeDocument();
+        return document.pdf.getNumberOfPages();
+    }
+
+    /**
+     * @return number of bytes of the saved document
+     */
+    @Benchmark
+    public long save(ClosedDocument document) throws IOException, COSVisitorException {
+        BenchmarkDocuments.CountingNullOutputStream output = new BenchmarkDocuments.CountingNullOutputStream();
+        document.pdf.save(output);
+        return output.getCount();
+    }
+
+    private static PageablePdf drawTable() throws IOException {
+        List<TableColumn> columns = BenchmarkDocuments.createColumns(4, false);
+        String[] row = {SHORT_TEXT, SHORT_TEXT, SHORT_TEXT, SHORT_TEXT};
+        PageablePdf pdf = BenchmarkDocuments.createPdf();
+        pdf.drawTable(BenchmarkDocuments.createTable(columns, row, ROWS, true));
+        return pdf;
+    }
+}
@@ -0,0 +1,67 @@
+package bma.pdfboxtable.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import bma.pdfboxtable.pdf.PageablePdf;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure how the footer pass of {@link PageablePdf#closeDocument()} scales with the number of pages.
+ *
+ * The number of pages is quadrupled on each step. The pass is linear in the number of pages if the time and the
+ * allocation per operation grow by the same factor.
+ *
+ * @author Bogdan Aldea
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderFooterBenchmark {
+
+    @Param({"1000", "4000", "16000"})
+    private int numberOfPages;
+
+    private PageablePdf pdf;
+
+    @Setup(Level.Invocation)
+    public void addPages() {
+        pdf = new PageablePdf(PDPage.PAGE_SIZE_A4.getWidth(), PDPage.PAGE_SIZE_A4.getHeight());
+        pdf.setFooterLines(Arrays.asList("This document is a benchmark of header and footer drawing."));
+        pdf.setIncludePageNumber(true);
+        for (int i = 0; i < numberOfPages; i++) {
+            pdf.addPage(new PDPage(PDPage.PAGE_SIZE_A4));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        pdf.close();
+    }
+
+    /**
+     * @return number of pages of the document
+     */
+    @Benchmark
+    public int closeDocument() throws IOException {
+        pdf.closeDocument();
+        return pdf.getNumberOfPages();
+    }
+}
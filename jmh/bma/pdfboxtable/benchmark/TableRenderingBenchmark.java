@@ -0,0 +1,129 @@
+package bma.pdfboxtable.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bma.pdfboxtable.pdf.PageablePdf;
+import bma.pdfboxtable.pdf.WrappedCellCache;
+import bma.pdfboxtable.table.TableColumn;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static bma.pdfboxtable.benchmark.BenchmarkDocuments.LONG_TEXT;
+import static bma.pdfboxtable.benchmark.BenchmarkDocuments.ROWS;
+import static bma.pdfboxtable.benchmark.BenchmarkDocuments.SHORT_TEXT;
+
+/**
+ * Benchmark of drawing tables of different shapes: narrow/wide, short/long text, grid on/off, overlapping columns and
+ * repeated values with and without the wrapped cell cache.
+ *
+ * One operation draws a table of {@value BenchmarkDocuments#ROWS} rows and closes the document, the rows and pages
+ * drawn per second are reported as secondary results. Run with the gc profiler for the allocation rate.
+ *
+ * @author Bogdan Aldea
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class TableRenderingBenchmark {
+    private static final int WRAPPED_CELL_CACHE_SIZE = 1024;
+
+    /**
+     * Shapes of the drawn table.
+     */
+    public enum TableShape {
+        NARROW_SHORT_GRID(2, SHORT_TEXT, true, false, false),
+        NARROW_SHORT_NO_GRID(2, SHORT_TEXT, false, false, false),
+        NARROW_LONG_GRID(2, LONG_TEXT, true, false, false),
+        WIDE_SHORT_GRID(12, SHORT_TEXT, true, false, false),
+        WIDE_LONG_GRID(12, LONG_TEXT, true, false, false),
+        WIDE_LONG_NO_GRID(12, LONG_TEXT, false, false, false),
+        OVERLAP(3, LONG_TEXT, false, true, false),
+        REPEATED_LONG_NO_CACHE(4, LONG_TEXT, true, false, false),
+        REPEATED_LONG_CACHE(4, LONG_TEXT, true, false, true);
+
+        private final int numberOfColumns;
+        private final String text;
+        private final boolean drawGrid;
+        private final boolean overlap;
+        private final boolean wrappedCellCache;
+
+        TableShape(int numberOfColumns, String text, boolean drawGrid, boolean overlap, boolean wrappedCellCache) {
+            this.numberOfColumns = numberOfColumns;
+            this.text = text;
+            this.drawGrid = drawGrid;
+            this.overlap = overlap;
+            this.wrappedCellCache = wrappedCellCache;
+        }
+    }
+
+    /**
+     * Rows and pages drawn, reported per second next to the operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class DrawnCounters {
+        public long rows;
+        public long pages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+            pages = 0;
+        }
+    }
+
+    @Param
+    private TableShape shape;
+
+    private List<TableColumn> columns;
+    private String[] row;
+
+    @Setup
+    public void setUp() {
+        columns = BenchmarkDocuments.createColumns(shape.numberOfColumns, shape.overlap);
+        row = new String[shape.numberOfColumns];
+        Arrays.fill(row, shape.text);
+        if (shape.overlap) {
+            row[1] = "3 X $10.00";
+        }
+    }
+
+    /**
+     * @return number of pages of the document
+     */
+    @Benchmark
+    public int drawTable(DrawnCounters counters) throws IOException {
+        PageablePdf pdf = BenchmarkDocuments.createPdf();
+        try {
+            if (shape.wrappedCellCache) {
+                pdf.setWrappedCellCache(new WrappedCellCache(WRAPPED_CELL_CACHE_SIZE));
+            }
+            pdf.drawTable(BenchmarkDocuments.createTable(columns, row, ROWS, shape.drawGrid));
+            pdf.closeDocument();
+
+            int pages = pdf.getNumberOfPages();
+            counters.rows += ROWS;
+            counters.pages += pages;
+            return pages;
+        } finally {
+            pdf.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package bma.pdfboxtable.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import bma.pdfboxtable.pdf.GlyphWidthCache;
+import bma.pdfboxtable.pdf.LineBreaker;
+import bma.pdfboxtable.pdf.PageablePdf;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the text measuring used to lay out the cells: splitting a text in lines and calculating its width.
+ *
+ * @author Bogdan Aldea
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TextMeasuringBenchmark {
+    private static final float MAX_WIDTH = 100f;
+    private static final float FONT_SIZE = 10f;
+
+    @Param({"short", "long"})
+    private String length;
+
+    private String text;
+    private PageablePdf pdf;
+    private GlyphWidthCache glyphWidthCache;
+    private final LineBreaker lineBreaker = new LineBreaker();
+
+    @Setup
+    public void setUp() {
+        text = "short".equals(length) ? BenchmarkDocuments.SHORT_TEXT : BenchmarkDocuments.LONG_TEXT;
+        pdf = BenchmarkDocuments.createPdf();
+        glyphWidthCache = pdf.getGlyphWidthCache(PDType1Font.HELVETICA);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pdf.close();
+    }
+
+    /**
+     * @return number of lines of the text
+     */
+    @Benchmark
+    public int splitTextInLines() throws IOException {
+        lineBreaker.breakLines(text, MAX_WIDTH, glyphWidthCache, FONT_SIZE);
+        return lineBreaker.getLineCount();
+    }
+
+    /**
+     * @return width of the text in points
+     */
+    @Benchmark
+    public float calculateWidth() throws IOException {
+        return pdf.calculateWidth(text, PDType1Font.HELVETICA, FONT_SIZE);
+    }
+}
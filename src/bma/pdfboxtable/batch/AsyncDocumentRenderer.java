@@ -0,0 +1,191 @@
+package bma.pdfboxtable.batch;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bma.pdfboxtable.pdf.DocumentBuffer;
+import bma.pdfboxtable.pdf.DocumentBufferPool;
+import bma.pdfboxtable.pdf.FontRegistry;
+import bma.pdfboxtable.pdf.PageablePdf;
+import bma.pdfboxtable.pdf.PageablePdfPool;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+
+/**
+ * Render documents without blocking the calling thread.
+ *
+ * Drawing, closing and saving a document are blocking calls, so they run on the given executor (e.g. a fixed pool
+ * dedicated to the documents or a virtual thread executor) and the result is returned as a {@link CompletableFuture},
+ * which completes exceptionally with the {@link IOException} if the document fails. The rows of a table can come
+ * from a {@link RowQueue} which is filled while the document is drawn, so a report is generated while its rows still
+ * arrive from the database.
+ *
+ * @author Bogdan Aldea
+ */
+public class AsyncDocumentRenderer {
+    private final Executor executor;
+    private final float pageWidth;
+    private final float pageHeight;
+    private PageablePdfPool documentPool;
+
+    /**
+     * The metrics of the standard fonts are loaded here, other fonts should be registered in the
+     * {@link FontRegistry} before rendering.
+     *
+     * @param executor executor used to render the documents, it is not shut down by the renderer
+     * @param pageWidth page with in points
+     * @param pageHeight page height in points
+     * @throws IOException If there is an error getting the width information.
+     */
+    public AsyncDocumentRenderer(Executor executor, float pageWidth, float pageHeight) throws IOException {
+        this.executor = executor;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        // load the standard fonts before the first document
+        FontRegistry.getDefault();
+    }
+
+    /**
+     * Render a document to a file.
+     *
+     * @param content the content of the document
+     * @param path the file
+     * @return the file, when the document was saved
+     */
+    public CompletableFuture<Path> render(DocumentContent content, final Path path) {
+        return render(content, new DocumentOutput<Path>() {
+            @Override
+            public Path save(PageablePdf pdf) throws IOException, COSVisitorException {
+                pdf.save(path);
+                return path;
+            }
+
+            @Override
+            public void discard(Path saved) {
+                // the file was given by the caller, it is left in place
+            }
+        });
+    }
+
+    /**
+     * Render a document in a buffer from the pool. The bytes can be sent without copying them, e.g. through
+     * {@link DocumentBuffer#asByteBuffers(int)}, and the buffer should be released when they were sent.
+     *
+     * @param content the content of the document
+     * @param bufferPool the pool of the buffers
+     * @return the buffer with the document, when the document was saved
+     */
+    public CompletableFuture<DocumentBuffer> render(DocumentContent content, final DocumentBufferPool bufferPool) {
+        return render(content, new DocumentOutput<DocumentBuffer>() {
+            @Override
+            public DocumentBuffer save(PageablePdf pdf) throws IOException, COSVisitorException {
+                return pdf.save(bufferPool);
+            }
+
+            @Override
+            public void discard(DocumentBuffer saved) {
+                saved.release();
+            }
+        });
+    }
+
+    /**
+     * Render a document to a channel (e.g. the body of a response or the sink of a {@link java.nio.channels.Pipe}).
+     * The document is written while it is saved, in chunks of the size of the save buffer, so the first bytes are
+     * sent before the whole document is written. A channel which doesn't accept more bytes blocks the rendering
+     * thread until it does.
+     *
+     * @param content the content of the document
+     * @param channel the channel, it is not closed
+     * @return completed when the document was written to the channel
+     */
+    public CompletableFuture<Void> render(DocumentContent content, final WritableByteChannel channel) {
+        return render(content, new DocumentOutput<Void>() {
+            @Override
+            public Void save(PageablePdf pdf) throws IOException, COSVisitorException {
+                pdf.save(channel);
+                return null;
+            }
+
+            @Override
+            public void discard(Void saved) {
+                // nothing is kept
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> render(final DocumentContent content, final DocumentOutput<T> output) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // cancelled before it started
+                    if (result.isDone()) {
+                        return;
+                    }
+                    try {
+                        T saved = render(content, output, result);
+                        if (!result.complete(saved) && saved != null) {
+                            output.discard(saved);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // rejected by the executor
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private <T> T render(DocumentContent content, DocumentOutput<T> output, CompletableFuture<T> result)
+            throws IOException {
+        PageablePdf pdf = documentPool != null ? documentPool.acquire(pageWidth, pageHeight)
+                : new PageablePdf(pageWidth, pageHeight);
+        try {
+            content.draw(pdf);
+            pdf.closeDocument();
+            if (result.isDone()) {
+                // cancelled while drawing, the document is not saved and the result is ignored
+                return null;
+            }
+            return output.save(pdf);
+        } catch (COSVisitorException e) {
+            throw new IOException("Exception while saving pdf: " + e.getMessage(), e);
+        } finally {
+            if (documentPool != null) {
+                documentPool.release(pdf);
+            } else {
+                pdf.close();
+            }
+        }
+    }
+
+    public PageablePdfPool getDocumentPool() {
+        return documentPool;
+    }
+
+    /**
+     * @param documentPool pool the documents are acquired from and released to, if null new documents are created
+     */
+    public void setDocumentPool(PageablePdfPool documentPool) {
+        this.documentPool = documentPool;
+    }
+
+    /*
+     * Where a closed document is saved.
+     */
+    private interface DocumentOutput<T> {
+        T save(PageablePdf pdf) throws IOException, COSVisitorException;
+
+        /*
+         * Called when the future was cancelled while the document was saved.
+         */
+        void discard(T saved);
+    }
+}
@@ -0,0 +1,135 @@
+package bma.pdfboxtable.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bma.pdfboxtable.pdf.FontRegistry;
+import bma.pdfboxtable.pdf.PageablePdf;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Render many independent documents in parallel.
+ *
+ * The documents are rendered on the given executor (e.g. a fork join pool or a virtual thread executor). The font
+ * metrics are loaded once in the {@link FontRegistry}, before any document is rendered, and shared by all the
+ * documents, so the threads don't resolve the widths through the same font objects. Only a limited number of jobs
+ * is pending at a time, so the jobs can come from a lazy source (e.g. {@code stream.iterator()}).
+ *
+ * @author Bogdan Aldea
+ */
+public class BatchRenderer {
+    private final ExecutorService executor;
+    private final float pageWidth;
+    private final float pageHeight;
+    private int maxPendingJobs = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The metrics of the standard fonts are loaded here, other fonts should be added with {@link #addFont(PDFont)}.
+     *
+     * @param executor executor used to render the documents, it is not shut down by the renderer
+     * @param pageWidth page with in points
+     * @param pageHeight page height in points
+     * @throws IOException If there is an error getting the width information.
+     */
+    public BatchRenderer(ExecutorService executor, float pageWidth, float pageHeight) throws IOException {
+        this.executor = executor;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        // load the standard fonts before the first job
+        FontRegistry.getDefault();
+    }
+
+    /**
+     * Load the metrics of a font used by the documents in the font registry of the process. This should be called
+     * before rendering.
+     *
+     * @param font the font
+     * @throws IOException If there is an error getting the width information.
+     */
+    public void addFont(PDFont font) throws IOException {
+        FontRegistry.getDefault().registerFont(font);
+    }
+
+    /**
+     * Render all the jobs and wait for them to finish. A failed job doesn't stop the others, its exception is
+     * reported in the result.
+     *
+     * @param jobs the documents to render
+     * @return aggregated result of the batch
+     * @throws InterruptedException If the thread is interrupted while waiting for the jobs.
+     */
+    public BatchResult render(Iterator<DocumentJob> jobs) throws InterruptedException {
+        final AtomicInteger documents = new AtomicInteger();
+        final AtomicLong pages = new AtomicLong();
+        final ConcurrentLinkedQueue<Exception> failures = new ConcurrentLinkedQueue<>();
+        final Semaphore pendingJobs = new Semaphore(maxPendingJobs);
+
+        long start = System.nanoTime();
+        while (jobs.hasNext()) {
+            final DocumentJob job = jobs.next();
+            pendingJobs.acquire();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            pages.addAndGet(render(job));
+                            documents.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            failures.add(e);
+                        } finally {
+                            pendingJobs.release();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // rejected by the executor
+                pendingJobs.release();
+                failures.add(e);
+            }
+        }
+        // wait for the last jobs
+        pendingJobs.acquire(maxPendingJobs);
+        long elapsedNanos = System.nanoTime() - start;
+
+        return new BatchResult(documents.get(), pages.get(), new ArrayList<>(failures), elapsedNanos);
+    }
+
+    /*
+     * @return number of pages of the document
+     */
+    private int render(DocumentJob job) throws IOException {
+        PageablePdf pdf = new PageablePdf(pageWidth, pageHeight);
+        try {
+            job.draw(pdf);
+            pdf.closeDocument();
+            try (OutputStream output = job.openOutput()) {
+                pdf.save(output);
+            } catch (COSVisitorException e) {
+                throw new IOException("Exception while saving pdf: " + e.getMessage(), e);
+            }
+            return pdf.getNumberOfPages();
+        } finally {
+            pdf.close();
+        }
+    }
+
+    public int getMaxPendingJobs() {
+        return maxPendingJobs;
+    }
+
+    /**
+     * @param maxPendingJobs maximum number of jobs submitted to the executor and not finished yet
+     */
+    public void setMaxPendingJobs(int maxPendingJobs) {
+        this.maxPendingJobs = maxPendingJobs;
+    }
+}
@@ -0,0 +1,72 @@
+package bma.pdfboxtable.batch;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregated result of a batch rendered by {@link BatchRenderer}.
+ *
+ * @author Bogdan Aldea
+ */
+public class BatchResult {
+    private final int documents;
+    private final long pages;
+    private final List<Exception> failures;
+    private final long elapsedNanos;
+
+    BatchResult(int documents, long pages, List<Exception> failures, long elapsedNanos) {
+        this.documents = documents;
+        this.pages = pages;
+        this.failures = Collections.unmodifiableList(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return number of documents rendered successfully
+     */
+    public int getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return number of pages of the documents rendered successfully
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    /**
+     * @return the exceptions of the documents which failed
+     */
+    public List<Exception> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return time spent rendering the whole batch in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return documents rendered per second
+     */
+    public double getDocumentsPerSecond() {
+        return documents / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return pages rendered per second
+     */
+    public double getPagesPerSecond() {
+        return pages / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents, %d pages, %d failures in %d ms (%.1f documents/s, %.1f pages/s)",
+                documents, pages, failures.size(), elapsedNanos / 1000000, getDocumentsPerSecond(),
+                getPagesPerSecond());
+    }
+}
@@ -0,0 +1,21 @@
+package bma.pdfboxtable.batch;
+
+import java.io.IOException;
+
+import bma.pdfboxtable.pdf.PageablePdf;
+
+/**
+ * Content drawn on a document rendered by {@link BatchRenderer} or {@link AsyncDocumentRenderer}.
+ *
+ * @author Bogdan Aldea
+ */
+public interface DocumentContent {
+
+    /**
+     * Draw the content of the document. The document is closed and saved by the renderer.
+     *
+     * @param pdf new empty document
+     * @throws IOException If there is an error while drawing the document.
+     */
+    void draw(PageablePdf pdf) throws IOException;
+}
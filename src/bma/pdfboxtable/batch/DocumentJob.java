@@ -0,0 +1,18 @@
+package bma.pdfboxtable.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * One document rendered by {@link BatchRenderer}.
+ *
+ * @author Bogdan Aldea
+ */
+public interface DocumentJob extends DocumentContent {
+
+    /**
+     * @return the stream where the document is saved, it is closed by the renderer
+     * @throws IOException If the stream cannot be opened.
+     */
+    OutputStream openOutput() throws IOException;
+}
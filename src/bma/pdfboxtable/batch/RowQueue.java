@@ -0,0 +1,290 @@
+package bma.pdfboxtable.batch;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded queue of table rows which are drawn while they still arrive (e.g. from a database query running on another
+ * thread).
+ *
+ * The producer adds the rows and completes the queue, the document reads it as the rows of a streamed table:
+ * {@code new Table(columns, rowQueue)}. At most {@code capacity} rows wait in the queue, so a producer faster than
+ * the document is slowed down instead of filling the memory:
+ * <ul>
+ * <li>a blocking producer waits in {@link #put(String[])} until there is space</li>
+ * <li>a non blocking producer (e.g. a reactive driver) gets the number of rows it can send through the demand
+ * listener, the same way a subscriber requests items from a publisher, and adds them with {@link #offer(String[])}
+ * </li>
+ * </ul>
+ * The rows are read by one thread, the one drawing the table.
+ *
+ * @author Bogdan Aldea
+ */
+public class RowQueue implements Iterator<String[]> {
+    private final int capacity;
+    private final ArrayDeque<String[]> rows;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private IntConsumer demandListener;
+    // rows signalled to the demand listener and not added yet
+    private int requestedRows;
+    private boolean completed;
+    private boolean cancelled;
+    private Throwable failure;
+
+    /**
+     * @param capacity maximum number of rows waiting to be drawn
+     */
+    public RowQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.rows = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Listener called with the number of rows which can be added without exceeding the capacity. It is called once
+     * when it is set and then from the thread drawing the table, each time half of the capacity is free again. For
+     * a {@code Flow.Subscriber} this is {@code subscription::request}.
+     *
+     * @param demandListener the listener
+     */
+    public void setDemandListener(IntConsumer demandListener) {
+        int demand;
+        lock.lock();
+        try {
+            this.demandListener = demandListener;
+            demand = takeDemand(1);
+        } finally {
+            lock.unlock();
+        }
+        signalDemand(demandListener, demand);
+    }
+
+    /**
+     * Add a row, waiting while the queue is full.
+     *
+     * @param row the row
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     * @throws CancellationException If the document stopped reading the rows.
+     */
+    public void put(String[] row) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (rows.size() == capacity && !cancelled) {
+                notFull.await();
+            }
+            add(row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a row, waiting at most the given time while the queue is full.
+     *
+     * @param row the row
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if the row was added, false if the queue was still full
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     * @throws CancellationException If the document stopped reading the rows.
+     */
+    public boolean offer(String[] row, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (rows.size() == capacity && !cancelled) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            add(row);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a row if the queue is not full, without waiting.
+     *
+     * @param row the row
+     * @return true if the row was added, false if the queue is full
+     * @throws CancellationException If the document stopped reading the rows.
+     */
+    public boolean offer(String[] row) {
+        lock.lock();
+        try {
+            if (rows.size() == capacity && !cancelled) {
+                return false;
+            }
+            add(row);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Called with the lock held, when there is space or the queue is cancelled.
+     */
+    private void add(String[] row) {
+        if (cancelled) {
+            throw new CancellationException("The rows are not read any more");
+        }
+        if (completed) {
+            throw new IllegalStateException("The queue is already completed");
+        }
+        rows.add(row);
+        if (requestedRows > 0) {
+            requestedRows--;
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * Mark the end of the rows, the table ends after the rows already added.
+     */
+    public void complete() {
+        lock.lock();
+        try {
+            completed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * End the rows with a failure (e.g. the query failed). The document fails when it reaches the end of the rows
+     * already added.
+     *
+     * @param failure the failure
+     */
+    public void fail(Throwable failure) {
+        lock.lock();
+        try {
+            if (!completed) {
+                this.failure = failure;
+                completed = true;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop reading the rows (e.g. the document failed or its future was cancelled). The rows waiting in the queue
+     * are dropped, the producer gets a {@link CancellationException} when it adds the next row and the document gets
+     * one when it reads the next row, so the table is not saved truncated. Cancelling a queue which was read to the
+     * end has no effect.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            rows.clear();
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the rows are not read any more
+     */
+    public boolean isCancelled() {
+        lock.lock();
+        try {
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for the next row or for the end of the rows.
+     *
+     * @throws RuntimeException If the producer failed or the thread is interrupted while waiting.
+     * @throws CancellationException If the queue was cancelled.
+     */
+    @Override
+    public boolean hasNext() {
+        lock.lock();
+        try {
+            while (rows.isEmpty() && !completed && !cancelled) {
+                notEmpty.await();
+            }
+            if (cancelled) {
+                throw new CancellationException("The rows were cancelled");
+            }
+            if (failure != null && rows.isEmpty()) {
+                throw new RuntimeException("Exception while reading the rows: " + failure.getMessage(), failure);
+            }
+            return !rows.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Exception while waiting for the rows: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String[] row;
+        IntConsumer listener;
+        int demand;
+        lock.lock();
+        try {
+            row = rows.poll();
+            notFull.signal();
+            listener = demandListener;
+            demand = takeDemand(Math.max(1, capacity / 2));
+        } finally {
+            lock.unlock();
+        }
+        signalDemand(listener, demand);
+        return row;
+    }
+
+    /*
+     * Called with the lock held.
+     * @return number of rows to request from the producer, 0 if less than minimum rows can be requested
+     */
+    private int takeDemand(int minimum) {
+        if (demandListener == null || completed || cancelled) {
+            return 0;
+        }
+        int demand = capacity - rows.size() - requestedRows;
+        if (demand < minimum) {
+            return 0;
+        }
+        requestedRows += demand;
+        return demand;
+    }
+
+    /*
+     * The listener is called without the lock, so it can add the rows right away.
+     */
+    private static void signalDemand(IntConsumer listener, int demand) {
+        if (demand > 0) {
+            listener.accept(demand);
+        }
+    }
+}
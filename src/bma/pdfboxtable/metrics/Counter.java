@@ -0,0 +1,37 @@
+package bma.pdfboxtable.metrics;
+
+/**
+ * Quantities counted during the document generation.
+ *
+ * @author Bogdan Aldea
+ */
+public enum Counter {
+    /**
+     * Table rows drawn, without the header rows.
+     */
+    ROWS,
+    /**
+     * Table cells drawn, without the header cells.
+     */
+    CELLS,
+    /**
+     * Pages added to the document.
+     */
+    PAGES,
+    /**
+     * Operators written in the page contents (text, grid and backgrounds).
+     */
+    OPERATORS,
+    /**
+     * Bytes of the page contents, before compression.
+     */
+    CONTENT_BYTES,
+    /**
+     * Bytes of the page contents and forms compressed when the document is closed.
+     */
+    COMPRESSED_BYTES,
+    /**
+     * Bytes of the saved document.
+     */
+    BYTES_WRITTEN
+}
@@ -0,0 +1,40 @@
+package bma.pdfboxtable.metrics;
+
+/**
+ * Receives the timings and the counts of a document generation.
+ *
+ * The listener is called on the thread which draws the document, the parallel parts of the generation are reported
+ * on that thread too, once they are finished.
+ *
+ * @author Bogdan Aldea
+ */
+public interface MetricsListener {
+    /**
+     * Listener which ignores everything. When it is used the document doesn't measure anything.
+     */
+    MetricsListener NO_OP = new MetricsListener() {
+        @Override
+        public void phaseCompleted(Phase phase, long nanos) {
+            // ignored
+        }
+
+        @Override
+        public void counted(Counter counter, long amount) {
+            // ignored
+        }
+    };
+
+    /**
+     * A phase (or a part of it, e.g. one row) was completed.
+     *
+     * @param phase the phase
+     * @param nanos duration in nanoseconds
+     */
+    void phaseCompleted(Phase phase, long nanos);
+
+    /**
+     * @param counter the counter
+     * @param amount the amount to add
+     */
+    void counted(Counter counter, long amount);
+}
@@ -0,0 +1,100 @@
+package bma.pdfboxtable.metrics;
+
+import java.util.Arrays;
+
+/**
+ * In memory metrics of one document: total time and number of calls of each phase and the value of each counter.
+ *
+ * The recorder is not thread safe, every document should use its own recorder.
+ *
+ * @author Bogdan Aldea
+ */
+public class MetricsRecorder implements MetricsListener {
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] phaseCalls = new long[Phase.values().length];
+    private final long[] counters = new long[Counter.values().length];
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseCalls[phase.ordinal()]++;
+    }
+
+    @Override
+    public void counted(Counter counter, long amount) {
+        counters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * @param phase the phase
+     * @return total time spent in the phase in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @param phase the phase
+     * @return number of times the phase was reported
+     */
+    public long getCalls(Phase phase) {
+        return phaseCalls[phase.ordinal()];
+    }
+
+    /**
+     * @param counter the counter
+     * @return value of the counter
+     */
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * Report everything recorded here to another listener (e.g. the metrics of a page drawn on another thread).
+     *
+     * @param listener the listener
+     */
+    public void replayTo(MetricsListener listener) {
+        for (Phase phase : Phase.values()) {
+            if (phaseCalls[phase.ordinal()] > 0) {
+                listener.phaseCompleted(phase, phaseNanos[phase.ordinal()]);
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            if (counters[counter.ordinal()] > 0) {
+                listener.counted(counter, counters[counter.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Forget everything recorded, so the recorder can be used for the next document.
+     */
+    public void reset() {
+        Arrays.fill(phaseNanos, 0);
+        Arrays.fill(phaseCalls, 0);
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * @return summary of the document, one line for each phase and counter
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            summary.append(String.format("%-14s %10.1f ms %10d calls%n", phase,
+                    phaseNanos[phase.ordinal()] / NANOS_PER_MILLI, phaseCalls[phase.ordinal()]));
+        }
+        for (Counter counter : Counter.values()) {
+            summary.append(String.format("%-14s %13d%n", counter, counters[counter.ordinal()]));
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+}
@@ -0,0 +1,41 @@
+package bma.pdfboxtable.metrics;
+
+/**
+ * Phases of the document generation which are timed.
+ *
+ * @author Bogdan Aldea
+ */
+public enum Phase {
+    /**
+     * Row heights computed without drawing (page count, layout index).
+     */
+    MEASURE,
+    /**
+     * Cells split in lines before drawing the rows.
+     */
+    WRAP,
+    /**
+     * Rows drawn in the page content.
+     */
+    PAINT,
+    /**
+     * Pages finished (grid, backgrounds) and added to the document.
+     */
+    PAGE_BREAK,
+    /**
+     * Header and footer drawn on all the pages.
+     */
+    HEADER_FOOTER,
+    /**
+     * Embedded fonts subset to the glyphs drawn when the document is closed.
+     */
+    SUBSET_FONTS,
+    /**
+     * Content streams joined and compressed when the document is closed.
+     */
+    COMPRESS,
+    /**
+     * Document written to the output.
+     */
+    SAVE
+}
@@ -0,0 +1,116 @@
+package bma.pdfboxtable.pdf;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+
+/**
+ * Collect the cell backgrounds of the tables from one page and draw them at once.
+ *
+ * A background which continues a previous one with the same colour, position and width (e.g. the background of the
+ * same column on consecutive rows) extends it, so a column with a constant background is drawn as only one rectangle
+ * per page. The rectangles are drawn in the order they were added, so a background still overrides the ones added
+ * before it, and the colour is set only when it changes. A background is not merged into a rectangle which was added
+ * before another overlapping background (e.g. the header of a second table drawn right under the first one), since it
+ * would then be drawn under that background.
+ *
+ * @author Bogdan Aldea
+ */
+public class BackgroundBuilder {
+    private static final int RECTANGLE_SIZE = 4;
+    private static final float EPSILON = 0.001f;
+
+    private Color[] colors = new Color[16];
+    // x, y, width, height for each rectangle, y is the bottom of the rectangle
+    private float[] rectangles = new float[RECTANGLE_SIZE * colors.length];
+    private int count;
+
+    /**
+     * @param color background colour
+     * @param x the left x coordinate
+     * @param topY the top y coordinate
+     * @param width the width
+     * @param height the height
+     */
+    public void addRectangle(Color color, float x, float topY, float width, float height) {
+        float y = topY - height;
+        for (int i = count - 1; i >= 0; i--) {
+            int offset = RECTANGLE_SIZE * i;
+            if (colors[i].equals(color) && rectangles[offset] == x && rectangles[offset + 2] == width
+                    && Math.abs(rectangles[offset + 1] - topY) < EPSILON) {
+                // the new rectangle is just below an existing one
+                rectangles[offset + 1] = y;
+                rectangles[offset + 3] += height;
+                return;
+            }
+            if (intersects(offset, x, y, width, height)) {
+                // the rectangles before this one are drawn under it
+                break;
+            }
+        }
+
+        if (count == colors.length) {
+            colors = Arrays.copyOf(colors, 2 * colors.length);
+            rectangles = Arrays.copyOf(rectangles, 2 * rectangles.length);
+        }
+        int offset = RECTANGLE_SIZE * count;
+        colors[count] = color;
+        rectangles[offset] = x;
+        rectangles[offset + 1] = y;
+        rectangles[offset + 2] = width;
+        rectangles[offset + 3] = height;
+        count++;
+    }
+
+    /*
+     * Check if the rectangle at the offset and the given one have a common area, touching edges don't count.
+     */
+    private boolean intersects(int offset, float x, float y, float width, float height) {
+        return rectangles[offset] < x + width - EPSILON && x < rectangles[offset] + rectangles[offset + 2] - EPSILON
+                && rectangles[offset + 1] < y + height - EPSILON
+                && y < rectangles[offset + 1] + rectangles[offset + 3] - EPSILON;
+    }
+
+    /**
+     * @return true if there are no backgrounds to draw
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Draw all the collected backgrounds and remove them from the builder. At the end the colour is set back to black.
+     *
+     * @param contentStream page content stream
+     * @throws IOException If there is an error writing to the page contents.
+     */
+    public void draw(PDPageContentStream contentStream) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+
+        Color currentColor = null;
+        for (int i = 0; i < count; i++) {
+            if (!colors[i].equals(currentColor)) {
+                currentColor = colors[i];
+                contentStream.setNonStrokingColor(currentColor);
+            }
+            int offset = RECTANGLE_SIZE * i;
+            contentStream.fillRect(rectangles[offset], rectangles[offset + 1], rectangles[offset + 2],
+                    rectangles[offset + 3]);
+        }
+        contentStream.setNonStrokingColor(Color.BLACK);
+
+        clear();
+    }
+
+    /**
+     * Remove all the collected backgrounds.
+     */
+    public void clear() {
+        Arrays.fill(colors, 0, count, null);
+        count = 0;
+    }
+}
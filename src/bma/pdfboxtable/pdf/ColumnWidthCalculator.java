@@ -0,0 +1,139 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.List;
+
+import bma.pdfboxtable.table.Table;
+import bma.pdfboxtable.table.TableColumn;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Compute the column widths of a {@link Table} from its content.
+ *
+ * Every column has a minimum width, the widest word of its cells, and a maximum width, the widest cell on a single
+ * line. If the maximum widths fit in the available width the columns get their maximum width, otherwise the space
+ * left after the minimum widths is shared in proportion to the difference between the maximum and the minimum width.
+ * Both widths are found in the same scan of the cell text, so every sampled cell is measured only once.
+ *
+ * @author Bogdan Aldea
+ */
+public class ColumnWidthCalculator {
+    private static final float FONT_FACTOR = 1000f;
+    private static final char WORD_DELIMITER = ' ';
+    // added to the widths, so a text measured to fit on one line is not wrapped because of the float rounding
+    private static final float WIDTH_TOLERANCE = 0.01f;
+
+    private final PageablePdf pdf;
+
+    /**
+     * @param pdf the document, its glyph width caches are used to measure the text
+     */
+    public ColumnWidthCalculator(PageablePdf pdf) {
+        this.pdf = pdf;
+    }
+
+    /**
+     * Compute the width of each column. The headers are measured only if they are drawn.
+     *
+     * @param table the table, the rows are sampled with {@link Table#getAutoWidthSampleSize()}
+     * @param rowFont row font
+     * @param headerFont header font
+     * @param fontSize font size
+     * @param availableWidth width available for the table
+     * @return the width of each column
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float[] calculateWidths(Table table, PDFont rowFont, PDFont headerFont, float fontSize,
+                                   float availableWidth) throws IOException {
+        int numberOfColumns = table.getColumns().size();
+        float[] minWidths = new float[numberOfColumns];
+        float[] maxWidths = new float[numberOfColumns];
+
+        if (table.isDrawHeaders()) {
+            GlyphWidthCache headerWidths = pdf.getGlyphWidthCache(headerFont);
+            List<TableColumn> columns = table.getColumns();
+            for (int columnNumber = 0; columnNumber < numberOfColumns; columnNumber++) {
+                measure(columns.get(columnNumber).getHeader(), headerWidths, fontSize, minWidths, maxWidths,
+                        columnNumber);
+            }
+        }
+
+        GlyphWidthCache rowWidths = pdf.getGlyphWidthCache(rowFont);
+        for (String[] row : table.sampleRows(table.getAutoWidthSampleSize())) {
+            int numberOfCells = Math.min(row.length, numberOfColumns);
+            for (int cellNumber = 0; cellNumber < numberOfCells; cellNumber++) {
+                measure(row[cellNumber], rowWidths, fontSize, minWidths, maxWidths, cellNumber);
+            }
+        }
+
+        return distribute(minWidths, maxWidths, 2 * table.getCellInsidePadding(), availableWidth);
+    }
+
+    /*
+     * Keep the widest word and the widest text of the column, in points.
+     */
+    private static void measure(String text, GlyphWidthCache glyphWidths, float fontSize, float[] minWidths,
+                                float[] maxWidths, int columnNumber) throws IOException {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        float textWidth = 0;
+        float wordWidth = 0;
+        float widestWord = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            float charWidth = glyphWidths.getCharWidth(text.charAt(i));
+            textWidth += charWidth;
+            if (text.charAt(i) == WORD_DELIMITER) {
+                wordWidth = 0;
+            } else {
+                wordWidth += charWidth;
+                if (wordWidth > widestWord) {
+                    widestWord = wordWidth;
+                }
+            }
+        }
+
+        float minWidth = widestWord / FONT_FACTOR * fontSize;
+        float maxWidth = textWidth / FONT_FACTOR * fontSize;
+        if (minWidth > minWidths[columnNumber]) {
+            minWidths[columnNumber] = minWidth;
+        }
+        if (maxWidth > maxWidths[columnNumber]) {
+            maxWidths[columnNumber] = maxWidth;
+        }
+    }
+
+    /*
+     * Add the cell padding to the widths and share the available width between the columns.
+     */
+    private static float[] distribute(float[] minWidths, float[] maxWidths, float cellPadding,
+                                      float availableWidth) {
+        int numberOfColumns = minWidths.length;
+        float totalMin = 0;
+        float totalMax = 0;
+        for (int columnNumber = 0; columnNumber < numberOfColumns; columnNumber++) {
+            minWidths[columnNumber] += cellPadding + WIDTH_TOLERANCE;
+            maxWidths[columnNumber] += cellPadding + WIDTH_TOLERANCE;
+            totalMin += minWidths[columnNumber];
+            totalMax += maxWidths[columnNumber];
+        }
+
+        if (totalMax <= availableWidth) {
+            return maxWidths;
+        }
+        if (totalMin >= availableWidth) {
+            // the table is wider than the page, but no word is split
+            return minWidths;
+        }
+
+        float ratio = (availableWidth - totalMin) / (totalMax - totalMin);
+        float[] widths = new float[numberOfColumns];
+        for (int columnNumber = 0; columnNumber < numberOfColumns; columnNumber++) {
+            widths[columnNumber] = minWidths[columnNumber]
+                    + ((maxWidths[columnNumber] - minWidths[columnNumber]) * ratio);
+        }
+        return widths;
+    }
+}
@@ -0,0 +1,195 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Deflater;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Compress the content of the pages of a document with a given Flate level, when the document is closed.
+ *
+ * The content streams of each page (the rows, the grid, the header and the footer appended at the end) are joined in a
+ * single stream, which compresses better than the small streams and leaves fewer objects to write, and the forms used
+ * by the pages are compressed again with the same level. The streams of a document share its storage, so they are
+ * read and written on the calling thread and only the compression runs on the pool, a batch of streams at a time.
+ *
+ * @author Bogdan Aldea
+ */
+final class ContentCompressor {
+    private static final int STREAMS_PER_BATCH = 64;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final int level;
+    private final ForkJoinPool pool;
+
+    /*
+     * The content is compressed on the calling thread if the pool is null.
+     */
+    ContentCompressor(int level, ForkJoinPool pool) {
+        this.level = level;
+        this.pool = pool;
+    }
+
+    /*
+     * Compress the content of the pages and of the forms they use.
+     *
+     * @return number of compressed bytes written
+     */
+    long compress(PageablePdf document, List<?> pages) throws IOException {
+        // page dictionaries, whose content streams are joined, and form streams
+        List<COSDictionary> targets = new ArrayList<>();
+        Map<COSBase, Boolean> visited = new IdentityHashMap<>();
+        for (Object page : pages) {
+            COSDictionary pageDictionary = ((PDPage) page).getCOSDictionary();
+            if (pageDictionary.getDictionaryObject(COSName.CONTENTS) != null) {
+                targets.add(pageDictionary);
+            }
+            addForms(pageDictionary, targets, visited);
+        }
+
+        long bytes = 0;
+        for (int start = 0; start < targets.size(); start += STREAMS_PER_BATCH) {
+            bytes += compressBatch(document, targets.subList(start, Math.min(targets.size(),
+                    start + STREAMS_PER_BATCH)));
+        }
+        return bytes;
+    }
+
+    /*
+     * Add the forms of the resources, and the forms used by them, once.
+     */
+    private static void addForms(COSDictionary dictionary, List<COSDictionary> targets, Map<COSBase, Boolean> visited) {
+        COSBase resources = dictionary.getDictionaryObject(COSName.RESOURCES);
+        if (!(resources instanceof COSDictionary)) {
+            return;
+        }
+        COSBase xObjects = ((COSDictionary) resources).getDictionaryObject(COSName.XOBJECT);
+        if (!(xObjects instanceof COSDictionary)) {
+            return;
+        }
+
+        for (COSBase value : ((COSDictionary) xObjects).getValues()) {
+            COSBase xObject = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+            if (xObject instanceof COSStream && COSName.FORM.equals(((COSStream) xObject).getItem(COSName.SUBTYPE))
+                    && visited.put(xObject, Boolean.TRUE) == null) {
+                targets.add((COSStream) xObject);
+                addForms((COSStream) xObject, targets, visited);
+            }
+        }
+    }
+
+    private long compressBatch(PageablePdf document, List<COSDictionary> batch) throws IOException {
+        byte[][] contents = new byte[batch.size()][];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = readContent(batch.get(i));
+        }
+
+        DeflateTask task = new DeflateTask(contents, 0, contents.length, level);
+        if (pool != null) {
+            pool.invoke(task);
+        } else {
+            task.invoke();
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < contents.length; i++) {
+            writeContent(document, batch.get(i), contents[i]);
+            bytes += contents[i].length;
+        }
+        return bytes;
+    }
+
+    private static byte[] readContent(COSDictionary target) throws IOException {
+        if (target instanceof COSStream) {
+            try (InputStream input = ((COSStream) target).getUnfilteredStream()) {
+                return IOUtils.toByteArray(input);
+            }
+        }
+        return StaticLayer.joinContents(new PDPage(target));
+    }
+
+    /*
+     * A form keeps its dictionary and gets the compressed data, a page gets a new stream in place of its content
+     * streams.
+     */
+    private static void writeContent(PageablePdf document, COSDictionary target, byte[] compressed)
+            throws IOException {
+        COSStream stream;
+        if (target instanceof COSStream) {
+            stream = (COSStream) target;
+            stream.removeItem(COSName.DECODE_PARMS);
+        } else {
+            stream = document.createStream();
+            target.setItem(COSName.CONTENTS, stream);
+        }
+
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        try (OutputStream output = stream.createFilteredStream()) {
+            output.write(compressed);
+        }
+    }
+
+    /*
+     * Compress a range of contents in place, the range is split until it has a single content.
+     */
+    private static class DeflateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] contents;
+        private final int start;
+        private final int end;
+        private final int level;
+
+        DeflateTask(byte[][] contents, int start, int end, int level) {
+            this.contents = contents;
+            this.start = start;
+            this.end = end;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new DeflateTask(contents, start, middle, level),
+                        new DeflateTask(contents, middle, end, level));
+                return;
+            }
+
+            for (int i = start; i < end; i++) {
+                contents[i] = deflate(contents[i], level);
+            }
+        }
+
+        private static byte[] deflate(byte[] content, int level) {
+            Deflater deflater = new Deflater(level);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4 + 64);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return output.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable in memory buffer for a saved document, which gives access to the bytes without copying them.
+ *
+ * A buffer taken from a {@link DocumentBufferPool} should be released when the bytes were sent, so the next document
+ * can reuse its memory.
+ *
+ * @author Bogdan Aldea
+ */
+public class DocumentBuffer extends ByteArrayOutputStream {
+    private final DocumentBufferPool pool;
+
+    /**
+     * @param initialCapacity initial capacity in bytes
+     */
+    public DocumentBuffer(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    DocumentBuffer(int initialCapacity, DocumentBufferPool pool) {
+        super(initialCapacity);
+        this.pool = pool;
+    }
+
+    /**
+     * @return read only view of the written bytes, the bytes are not copied
+     */
+    public synchronized ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+
+    /**
+     * Split the written bytes in chunks, e.g. for an asynchronous channel or a response body sent chunk by chunk.
+     *
+     * @param chunkSize maximum number of bytes of a chunk
+     * @return read only views of consecutive parts of the bytes, the bytes are not copied
+     */
+    public synchronized List<ByteBuffer> asByteBuffers(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+        }
+        List<ByteBuffer> chunks = new ArrayList<>(count / chunkSize + 1);
+        for (int offset = 0; offset < count; offset += chunkSize) {
+            chunks.add(ByteBuffer.wrap(buf, offset, Math.min(chunkSize, count - offset)).slice().asReadOnlyBuffer());
+        }
+        return chunks;
+    }
+
+    /**
+     * Write all the bytes to the channel (e.g. the channel of an HTTP response).
+     *
+     * @param channel the channel, it is not closed
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buf, 0, count);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * @return number of bytes the buffer can keep without growing
+     */
+    public synchronized int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * Give the buffer back to its pool. It must not be used after that. A buffer which doesn't come from a pool is
+     * only reset.
+     */
+    public void release() {
+        reset();
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+}
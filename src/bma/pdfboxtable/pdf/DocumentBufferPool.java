@@ -0,0 +1,56 @@
+package bma.pdfboxtable.pdf;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of {@link DocumentBuffer}s shared by the threads which save documents in memory.
+ *
+ * The buffers keep the capacity they grew to, so after a warm up the documents are saved without growing and copying
+ * the buffer. Buffers which grew over the retained capacity are dropped when released, so one huge document doesn't
+ * keep its memory forever.
+ *
+ * @author Bogdan Aldea
+ */
+public class DocumentBufferPool {
+    private static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+
+    private final BlockingQueue<DocumentBuffer> buffers;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    /**
+     * @param maxPooledBuffers maximum number of buffers kept in the pool
+     * @param maxRetainedCapacity buffers bigger than this (in bytes) are not kept in the pool
+     */
+    public DocumentBufferPool(int maxPooledBuffers, int maxRetainedCapacity) {
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+        this.initialCapacity = Math.min(DEFAULT_INITIAL_CAPACITY, maxRetainedCapacity);
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * @return an empty buffer, from the pool if there is one
+     */
+    public DocumentBuffer acquire() {
+        DocumentBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : new DocumentBuffer(initialCapacity, this);
+    }
+
+    /*
+     * Called by the buffer, it is already reset.
+     */
+    void release(DocumentBuffer buffer) {
+        if (buffer.capacity() <= maxRetainedCapacity) {
+            // if the pool is full the buffer is dropped
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return number of buffers waiting in the pool
+     */
+    public int getPooledBuffers() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,65 @@
+package bma.pdfboxtable.pdf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Buffers and caches of a document which are kept by {@link PageablePdfPool} when the document is released, so the
+ * next document doesn't allocate and fill them again: the storage of the streams, the glyph widths of the shared
+ * fonts, the arrays of the row layout and the grid and background buffers.
+ *
+ * @author Bogdan Aldea
+ */
+final class DocumentScratch {
+    private final ScratchBuffer scratchBuffer = new ScratchBuffer();
+    private final Map<PDFont, GlyphWidthCache> glyphWidthCaches = new HashMap<>();
+    private final Map<PDFont, FontMetrics> fontMetrics = new HashMap<>();
+    private final RowLayout rowLayout = new RowLayout();
+    private final GridBuilder gridBuilder = new GridBuilder();
+    private final BackgroundBuilder backgroundBuilder = new BackgroundBuilder();
+
+    /*
+     * Clear what belongs to the released document. The fonts of the document (e.g. embedded TrueType fonts) are
+     * dropped, only the fonts of the registry, which are shared by all the documents, are kept.
+     */
+    void reset(FontRegistry fontRegistry) {
+        scratchBuffer.reset();
+        gridBuilder.clear();
+        backgroundBuilder.clear();
+        glyphWidthCaches.keySet().removeIf(font -> fontRegistry.findFontMetrics(font) == null);
+        fontMetrics.keySet().removeIf(font -> fontRegistry.findFontMetrics(font) == null);
+    }
+
+    /*
+     * @return number of bytes kept for the streams of the next document
+     */
+    long getCapacity() {
+        return scratchBuffer.capacity();
+    }
+
+    ScratchBuffer getScratchBuffer() {
+        return scratchBuffer;
+    }
+
+    Map<PDFont, GlyphWidthCache> getGlyphWidthCaches() {
+        return glyphWidthCaches;
+    }
+
+    Map<PDFont, FontMetrics> getFontMetrics() {
+        return fontMetrics;
+    }
+
+    RowLayout getRowLayout() {
+        return rowLayout;
+    }
+
+    GridBuilder getGridBuilder() {
+        return gridBuilder;
+    }
+
+    BackgroundBuilder getBackgroundBuilder() {
+        return backgroundBuilder;
+    }
+}
@@ -0,0 +1,212 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import bma.pdfboxtable.table.Table;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontFactory;
+
+/**
+ * Static parts of a document, captured once and placed on every document created from the template: the content
+ * drawn on the first page before the table (e.g. headings), the header row of the table, the header and the footer.
+ * The documents created from the template get the settings, the fonts and the font metrics of the prototype, so only
+ * the rows are laid out and drawn for each document.
+ *
+ * <pre>
+ * PageablePdf prototype = new PageablePdf(width, height);
+ * prototype.setFooterLines(footerLines);
+ * prototype.setCurrentPositionAtStartOfThePage();
+ * prototype.drawHeading("Report");
+ * DocumentTemplate template = new DocumentTemplate(prototype, new Table(columns, new String[0][]));
+ * prototype.close();
+ *
+ * PageablePdf pdf = template.createDocument();
+ * pdf.drawTable(template.createTable(rows));
+ * </pre>
+ *
+ * The static content has to fit on the first page. The template can be shared by threads, each one creating its own
+ * documents. The fonts of the static content and of the settings (the current, bold, heading and footer fonts) are
+ * copied to each document, so each one is embedded once and the prototype can be closed. The fonts of the columns are
+ * used as they are, so they should not belong to a document (e.g. the standard 14 fonts). The fonts of the prototype
+ * are embedded whole even if it subsets its fonts, since the documents draw glyphs which are not known yet.
+ *
+ * @author Bogdan Aldea
+ */
+public class DocumentTemplate {
+    // document which is never drawn, it only keeps the settings of the prototype
+    private final PageablePdf settings;
+    private final TemplateResources fonts = new TemplateResources();
+    private final Table table;
+    private final float startX;
+    private final float startY;
+    private final float tableY;
+    private final StaticLayer firstPage;
+    private final StaticLayer headerAndFooter;
+    private final StaticLayer repeatedHeader;
+    private final float repeatedHeaderBottomY;
+
+    /**
+     * Template without a table header.
+     *
+     * @param prototype document with the static content drawn on its first page
+     * @throws IOException If there is an error capturing the static content.
+     */
+    public DocumentTemplate(PageablePdf prototype) throws IOException {
+        this(prototype, null);
+    }
+
+    /**
+     * The header row of the table is drawn on the prototype at its current position and it is captured with the
+     * first page. If the table repeats its headers, the repeated header is captured too. The prototype is not used by
+     * the template after that, so it can be closed.
+     *
+     * @param prototype document with the static content drawn on its first page
+     * @param table table whose columns and settings are used by {@link #createTable}, null if there is no table
+     * @throws IOException If there is an error capturing the static content.
+     */
+    public DocumentTemplate(PageablePdf prototype, Table table) throws IOException {
+        this.table = table;
+        // the fonts are shared with the documents, so they are not subset to the glyphs of the prototype
+        prototype.embedWholeFonts();
+        startX = prototype.getCurrentPositionX();
+        startY = prototype.getCurrentPositionY();
+        if (table != null && table.isDrawHeaders()) {
+            repeatedHeader = prototype.drawTemplateTableHeader(table);
+            repeatedHeaderBottomY = prototype.getRepeatedHeaderBottomY();
+        } else {
+            repeatedHeader = null;
+            repeatedHeaderBottomY = 0;
+        }
+        tableY = prototype.getCurrentPositionY();
+        firstPage = prototype.captureCurrentPage();
+        headerAndFooter = prototype.captureHeaderAndFooter();
+
+        settings = new PageablePdf(prototype.getPageWidth(), prototype.getPageHeight());
+        prototype.copySettingsTo(settings);
+        for (PDFont font : settings.getSettingsFonts()) {
+            fonts.read(font.getCOSObject());
+            // loaded once, the metrics are given to the copies of the font
+            settings.getFontMetrics(font);
+        }
+    }
+
+    /**
+     * @return a new document with the static content, the current position is where the table starts
+     * @throws IOException If there is an error writing the static content.
+     */
+    public PageablePdf createDocument() throws IOException {
+        return startDocument(new PageablePdf(settings.getPageWidth(), settings.getPageHeight()));
+    }
+
+    /**
+     * @param scratchDirectory directory for the scratch file, if null the default temporary directory is used
+     * @return a new document with the static content, which keeps the content of the pages in a scratch file
+     * @throws IOException If there is an error writing the static content.
+     */
+    public PageablePdf createDocument(File scratchDirectory) throws IOException {
+        return startDocument(new PageablePdf(settings.getPageWidth(), settings.getPageHeight(), scratchDirectory));
+    }
+
+    /**
+     * @param pool pool of documents, the document should be released to it when it is not used anymore
+     * @return a new document with the static content, using the state of a released document of the pool
+     * @throws IOException If there is an error writing the static content.
+     */
+    public PageablePdf createDocument(PageablePdfPool pool) throws IOException {
+        return startDocument(pool.acquire(settings.getPageWidth(), settings.getPageHeight()));
+    }
+
+    private PageablePdf startDocument(PageablePdf document) throws IOException {
+        settings.copySettingsTo(document);
+        try {
+            document.startFromTemplate(this);
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+        return document;
+    }
+
+    /**
+     * Table with the columns and the settings of the template table. Its header row is not drawn again when it is the
+     * first table drawn at the start position of a document created from the template.
+     *
+     * @param content table content
+     * @return the table
+     */
+    public Table createTable(String[][] content) {
+        return copyTableSettings(new Table(table.getColumns(), content));
+    }
+
+    /**
+     * @param rows table rows, read while the table is drawn
+     * @return table with the columns and the settings of the template table
+     */
+    public Table createTable(Iterator<String[]> rows) {
+        return copyTableSettings(new Table(table.getColumns(), rows));
+    }
+
+    private Table copyTableSettings(Table newTable) {
+        newTable.setDrawGrid(table.isDrawGrid());
+        newTable.setDrawHeaders(table.isDrawHeaders());
+        newTable.setRepeatHeaders(table.isRepeatHeaders());
+        newTable.setCellInsidePadding(table.getCellInsidePadding());
+        newTable.setHeaderBackgroundColor(table.getHeaderBackgroundColor());
+        return newTable;
+    }
+
+    /**
+     * @return the template table, null if there is no table
+     */
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * @return x position of the table
+     */
+    public float getStartX() {
+        return startX;
+    }
+
+    /**
+     * @return y position of the table, the top of its header row
+     */
+    public float getStartY() {
+        return startY;
+    }
+
+    /**
+     * @return y position of the first row of the table, below its header row
+     */
+    public float getTableY() {
+        return tableY;
+    }
+
+    StaticLayer getFirstPage() {
+        return firstPage;
+    }
+
+    StaticLayer getHeaderAndFooter() {
+        return headerAndFooter;
+    }
+
+    StaticLayer getRepeatedHeader() {
+        return repeatedHeader;
+    }
+
+    float getRepeatedHeaderBottomY() {
+        return repeatedHeaderBottomY;
+    }
+
+    /*
+     * Copy a font of the settings to the document. The copy shares its dictionaries and its font program with the
+     * static layers placed on the document.
+     */
+    PDFont copyFont(PDFont font, PageablePdf document) throws IOException {
+        return PDFontFactory.createFont((COSDictionary) fonts.copy(font.getCOSObject(), document));
+    }
+}
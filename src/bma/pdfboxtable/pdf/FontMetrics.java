@@ -0,0 +1,72 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Immutable glyph widths of the Latin range for a {@link PDFont}.
+ *
+ * All the widths are loaded when the metrics are created, so the metrics can be shared between documents rendered on
+ * different threads. Each document still uses its own {@link GlyphWidthCache} built on top of the shared metrics.
+ *
+ * @author Bogdan Aldea
+ */
+public final class FontMetrics {
+    static final int LATIN_RANGE = 256;
+
+    private final PDFont font;
+    private final float[] latinWidths;
+
+    /**
+     * Load the widths of the Latin range.
+     *
+     * @param font the font
+     * @throws IOException If there is an error getting the width information.
+     */
+    public FontMetrics(PDFont font) throws IOException {
+        this.font = font;
+        this.latinWidths = new float[LATIN_RANGE];
+        for (char character = 0; character < LATIN_RANGE; character++) {
+            latinWidths[character] = font.getStringWidth(String.valueOf(character));
+        }
+    }
+
+    private FontMetrics(PDFont font, float[] latinWidths) {
+        this.font = font;
+        this.latinWidths = latinWidths;
+    }
+
+    /**
+     * Metrics of another font object with the same widths (e.g. the same font program embedded in another document).
+     * The widths are shared, not loaded again.
+     *
+     * @param otherFont the other font
+     * @return the metrics of the other font
+     */
+    public FontMetrics forFont(PDFont otherFont) {
+        return new FontMetrics(otherFont, latinWidths);
+    }
+
+    /**
+     * @return the font
+     */
+    public PDFont getFont() {
+        return font;
+    }
+
+    /**
+     * @param character a character from the Latin range
+     * @return the width of the character in font units
+     */
+    public float getCharWidth(char character) {
+        return latinWidths[character];
+    }
+
+    /*
+     * The array is shared with the glyph width caches, which never change it because all the widths are loaded.
+     */
+    float[] getLatinWidths() {
+        return latinWidths;
+    }
+}
@@ -0,0 +1,268 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.fontbox.ttf.CMAPEncodingEntry;
+import org.apache.fontbox.ttf.CMAPTable;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.encoding.Encoding;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+/**
+ * Thread safe registry of fonts and their metrics, shared by all the documents of the process.
+ *
+ * The metrics of the standard 14 fonts are loaded when the default registry is created, so the documents don't
+ * resolve the widths through PDFBox. TrueType fonts are parsed once when they are registered; each document gets its
+ * own font object (see {@link #createTrueTypeFont(String, PageablePdf)}), because an embedded font program belongs to
+ * a document, but the parsing and the widths are not done again.
+ *
+ * @author Bogdan Aldea
+ */
+public final class FontRegistry {
+    private final ConcurrentMap<PDFont, FontMetrics> fontMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TrueTypeFontTemplate> trueTypeFonts = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry of the process, with the metrics of the standard 14 fonts loaded
+     */
+    public static FontRegistry getDefault() {
+        return DefaultRegistryHolder.REGISTRY;
+    }
+
+    /**
+     * Load the metrics of a font, if they were not loaded before.
+     *
+     * @param font the font
+     * @return the metrics of the font
+     * @throws IOException If there is an error getting the width information.
+     */
+    public FontMetrics registerFont(PDFont font) throws IOException {
+        FontMetrics metrics = fontMetrics.get(font);
+        if (metrics == null) {
+            metrics = new FontMetrics(font);
+            FontMetrics existingMetrics = fontMetrics.putIfAbsent(font, metrics);
+            if (existingMetrics != null) {
+                metrics = existingMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @param font the font
+     * @return the metrics of the font, null if the font is not registered
+     */
+    public FontMetrics findFontMetrics(PDFont font) {
+        return fontMetrics.get(font);
+    }
+
+    /**
+     * Parse a TrueType font and load its metrics. The font can then be used in any document with
+     * {@link #createTrueTypeFont(String, PageablePdf)}.
+     *
+     * @param name name used to get the font
+     * @param file the TrueType font file
+     * @throws IOException If there is an error reading the font.
+     */
+    public void registerTrueTypeFont(String name, Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            registerTrueTypeFont(name, input);
+        }
+    }
+
+    /**
+     * Parse a TrueType font and load its metrics. The font can then be used in any document with
+     * {@link #createTrueTypeFont(String, PageablePdf)}.
+     *
+     * @param name name used to get the font
+     * @param input the TrueType font program, it is not closed
+     * @throws IOException If there is an error reading the font.
+     */
+    public void registerTrueTypeFont(String name, InputStream input) throws IOException {
+        trueTypeFonts.put(name, new TrueTypeFontTemplate(input));
+    }
+
+    /**
+     * Create the font in the document and add its metrics to the document. The font program is copied to the
+     * document, it is not parsed again. If the document subsets the fonts (see {@link PageablePdf#setSubsetFonts})
+     * only the glyphs drawn with the font are embedded, when the document is closed.
+     *
+     * @param name name of a registered TrueType font
+     * @param document the document which embeds the font
+     * @return the font of the document
+     * @throws IOException If there is an error copying the font program.
+     */
+    public PDFont createTrueTypeFont(String name, PageablePdf document) throws IOException {
+        TrueTypeFontTemplate template = trueTypeFonts.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("The TrueType font is not registered: " + name);
+        }
+
+        // the program of a subset font is written when the document is closed
+        boolean subset = document.isSubsetFonts() && template.isSubsettable();
+        COSDictionary fontDictionary = template.copyFontDictionary(document, !subset);
+        PDTrueTypeFont font = new PDTrueTypeFont(fontDictionary);
+        document.addFontMetrics(template.getMetrics().forFont(font));
+        if (subset) {
+            COSDictionary fontDescriptor = (COSDictionary) fontDictionary.getDictionaryObject(COSName.FONT_DESC);
+            document.addFontSubset(new FontSubset(font, template.getProgram(),
+                    (COSStream) fontDescriptor.getDictionaryObject(COSName.FONT_FILE2)));
+        }
+        return font;
+    }
+
+    /*
+     * The registry is created on first use, so a process which doesn't draw tables doesn't load the fonts.
+     */
+    private static final class DefaultRegistryHolder {
+        private static final FontRegistry REGISTRY = createDefaultRegistry();
+
+        private static FontRegistry createDefaultRegistry() {
+            FontRegistry registry = new FontRegistry();
+            try {
+                for (String name : PDType1Font.getStandard14Names()) {
+                    registry.registerFont(PDType1Font.getStandardFont(name));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Exception while loading the standard fonts: " + e.getMessage(), e);
+            }
+            return registry;
+        }
+    }
+
+    /*
+     * A TrueType font parsed once: its dictionaries, the encoded font program, the parsed program used to create the
+     * subsets and the metrics. The template is only read after it is created, so the documents can copy it in
+     * parallel.
+     */
+    private static final class TrueTypeFontTemplate {
+        // codes of a simple font
+        private static final int CODES = 256;
+
+        private final COSDictionary fontDictionary;
+        private final COSStream fontFile;
+        private final byte[] encodedFontProgram;
+        // null if the font cannot be subset
+        private final TrueTypeProgram program;
+        private final FontMetrics metrics;
+
+        TrueTypeFontTemplate(InputStream input) throws IOException {
+            // the template document holds the font program of the template, it lives as long as the registry
+            PDTrueTypeFont font = PDTrueTypeFont.loadTTF(new PDDocument(), input);
+            fontDictionary = (COSDictionary) font.getCOSObject();
+            COSDictionary fontDescriptor = (COSDictionary) fontDictionary.getDictionaryObject(COSName.FONT_DESC);
+            fontFile = (COSStream) fontDescriptor.getDictionaryObject(COSName.FONT_FILE2);
+            try (InputStream fontProgram = fontFile.getFilteredStream()) {
+                encodedFontProgram = IOUtils.toByteArray(fontProgram);
+            }
+            program = createProgram(font);
+            metrics = new FontMetrics(font);
+        }
+
+        FontMetrics getMetrics() {
+            return metrics;
+        }
+
+        /*
+         * The viewer finds the glyph of a code through its name in the encoding and the unicode cmap of the font, so
+         * the same mapping gives the glyphs kept in the subsets. The glyphs of a symbolic font are found in another
+         * way, so it is always embedded whole.
+         */
+        private TrueTypeProgram createProgram(PDTrueTypeFont font) throws IOException {
+            CMAPEncodingEntry unicodeCmap = null;
+            CMAPTable cmapTable = font.getTTFFont().getCMAP();
+            if (cmapTable != null) {
+                for (CMAPEncodingEntry cmap : cmapTable.getCmaps()) {
+                    if (cmap.getPlatformId() == CMAPTable.PLATFORM_WINDOWS
+                            && cmap.getPlatformEncodingId() == CMAPTable.ENCODING_UNICODE) {
+                        unicodeCmap = cmap;
+                    }
+                }
+            }
+            if (font.isSymbolicFont() || unicodeCmap == null || font.getFontEncoding() == null) {
+                return null;
+            }
+
+            int[] codeToGlyph = new int[CODES];
+            for (int code = 0; code < CODES; code++) {
+                String character = Encoding.getCharacterForName(font.getFontEncoding().getName(code));
+                if (character != null) {
+                    codeToGlyph[code] = unicodeCmap.getGlyphId(character.codePointAt(0));
+                }
+            }
+            try (InputStream fontProgram = fontFile.getUnfilteredStream()) {
+                return new TrueTypeProgram(IOUtils.toByteArray(fontProgram), codeToGlyph);
+            }
+        }
+
+        TrueTypeProgram getProgram() {
+            return program;
+        }
+
+        boolean isSubsettable() {
+            return program != null;
+        }
+
+        /*
+         * @param withProgram false to leave the font file empty, for a subset written later
+         */
+        COSDictionary copyFontDictionary(PageablePdf document, boolean withProgram) throws IOException {
+            return (COSDictionary) copy(fontDictionary, document, withProgram);
+        }
+
+        /*
+         * Dictionaries and arrays are copied, so the document never changes the template. The other objects (names,
+         * numbers, strings) are not changed by PDFBox and they are shared.
+         */
+        private COSBase copy(COSBase object, PageablePdf document, boolean withProgram) throws IOException {
+            COSBase base = object instanceof COSObject ? ((COSObject) object).getObject() : object;
+            if (base == fontFile) {
+                return copyFontFile(document, withProgram);
+            }
+            if (base instanceof COSDictionary) {
+                COSDictionary copy = new COSDictionary();
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) base).entrySet()) {
+                    copy.setItem(entry.getKey(), copy(entry.getValue(), document, withProgram));
+                }
+                return copy;
+            }
+            if (base instanceof COSArray) {
+                COSArray copy = new COSArray();
+                for (COSBase item : (COSArray) base) {
+                    copy.add(copy(item, document, withProgram));
+                }
+                return copy;
+            }
+            return base;
+        }
+
+        private COSStream copyFontFile(PageablePdf document, boolean withProgram) throws IOException {
+            COSStream copy = document.createStream();
+            if (!withProgram) {
+                return copy;
+            }
+            copy.setItem(COSName.FILTER, fontFile.getItem(COSName.FILTER));
+            copy.setItem(COSName.LENGTH1, fontFile.getItem(COSName.LENGTH1));
+            try (OutputStream output = copy.createFilteredStream()) {
+                output.write(encodedFontProgram);
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.BitSet;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+
+/**
+ * Glyphs of an embedded TrueType font used by a document.
+ *
+ * The character codes drawn with the font are collected while the document is drawn, and when the document is closed
+ * the font program is written with only the glyphs of these codes. The parsed font program comes from the
+ * {@link FontRegistry} and it is shared by all the documents, so it is not parsed again for each subset.
+ *
+ * @author Bogdan Aldea
+ */
+final class FontSubset {
+    private static final int TAG_LENGTH = 6;
+    private static final int LETTERS = 26;
+    // COSString writes a text with characters outside of Latin-1 as UTF-16 with a byte order mark
+    private static final int LATIN_1_MAX = 0xff;
+    private static final int BYTE_ORDER_MARK_HIGH = 0xfe;
+    private static final int BYTE_ORDER_MARK_LOW = 0xff;
+
+    private final PDFont font;
+    private final TrueTypeProgram program;
+    private final COSStream fontFile;
+    private final BitSet usedCodes = new BitSet(LATIN_1_MAX + 1);
+
+    /*
+     * @param fontFile the empty font file stream of the font, it is written when the subset is created
+     */
+    FontSubset(PDFont font, TrueTypeProgram program, COSStream fontFile) {
+        this.font = font;
+        this.program = program;
+        this.fontFile = fontFile;
+    }
+
+    /*
+     * Subset collecting the codes drawn on a page painted on another thread, they are added to this subset later.
+     */
+    FontSubset createPageSubset() {
+        return new FontSubset(font, program, null);
+    }
+
+    PDFont getFont() {
+        return font;
+    }
+
+    /*
+     * Add the codes of a text drawn with the font, they are the bytes written by PDPageContentStream.drawString.
+     */
+    void addText(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char character = text.charAt(i);
+            if (character > LATIN_1_MAX) {
+                addUtf16(text);
+                return;
+            }
+            usedCodes.set(character);
+        }
+    }
+
+    private void addUtf16(String text) {
+        usedCodes.set(BYTE_ORDER_MARK_HIGH);
+        usedCodes.set(BYTE_ORDER_MARK_LOW);
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char character = text.charAt(i);
+            usedCodes.set(character >>> Byte.SIZE);
+            usedCodes.set(character & LATIN_1_MAX);
+        }
+    }
+
+    void addCodes(FontSubset pageSubset) {
+        usedCodes.or(pageSubset.usedCodes);
+    }
+
+    /*
+     * Write the subset in the font file and add the subset tag to the font name.
+     */
+    void writeSubset() throws IOException {
+        writeProgram(fontFile, program.subset(usedCodes));
+
+        String name = createTag() + "+" + font.getBaseFont();
+        font.setBaseFont(name);
+        PDFontDescriptor fontDescriptor = font.getFontDescriptor();
+        if (fontDescriptor != null) {
+            fontDescriptor.setFontName(name);
+        }
+    }
+
+    /*
+     * Write the whole font program instead of a subset, for a font which is also used by other documents (e.g. the
+     * documents created from a template) drawing glyphs which are not known here. The program is written in a new
+     * font file created now, since the document may have a page content stream open on its scratch file.
+     */
+    void writeWholeProgram(PageablePdf document) throws IOException {
+        COSStream wholeFontFile = document.createStream();
+        writeProgram(wholeFontFile, program.getData());
+        ((PDFontDescriptorDictionary) font.getFontDescriptor()).setFontFile2(new PDStream(wholeFontFile));
+    }
+
+    private static void writeProgram(COSStream stream, byte[] fontProgram) throws IOException {
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        stream.setInt(COSName.LENGTH1, fontProgram.length);
+        try (OutputStream output = new DeflaterOutputStream(stream.createFilteredStream())) {
+            output.write(fontProgram);
+        }
+    }
+
+    /*
+     * Six upper case letters derived from the used codes, so the same subset gets the same tag.
+     */
+    private String createTag() {
+        long hash = (usedCodes.hashCode() & 0xffffffffL) * 31 + font.getBaseFont().hashCode();
+        hash &= Long.MAX_VALUE;
+        char[] tag = new char[TAG_LENGTH];
+        for (int i = 0; i < TAG_LENGTH; i++) {
+            tag[i] = (char) ('A' + hash % LETTERS);
+            hash /= LETTERS;
+        }
+        return new String(tag);
+    }
+}
@@ -0,0 +1,126 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Glyph advance cache for one {@link PDFont}.
+ *
+ * Widths are kept in font units (1/1000 of the font size) exactly as {@link PDFont#getStringWidth(String)} returns
+ * them. Characters from the Latin range are stored in a float array, all the others in an overflow map.
+ *
+ * This class is not thread safe, every document should use its own cache.
+ *
+ * @author Bogdan Aldea
+ */
+public class GlyphWidthCache {
+    private static final int LATIN_RANGE = FontMetrics.LATIN_RANGE;
+
+    private final PDFont font;
+    private final float[] latinWidths;
+    private final Map<Character, Float> overflowWidths = new HashMap<>();
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param font the font for which we cache the widths
+     */
+    public GlyphWidthCache(PDFont font) {
+        this.font = font;
+        this.latinWidths = new float[LATIN_RANGE];
+        Arrays.fill(latinWidths, Float.NaN);
+    }
+
+    /**
+     * Create a cache on top of shared font metrics, the Latin range is not loaded again.
+     *
+     * @param fontMetrics preloaded font metrics
+     */
+    public GlyphWidthCache(FontMetrics fontMetrics) {
+        this.font = fontMetrics.getFont();
+        this.latinWidths = fontMetrics.getLatinWidths();
+    }
+
+    /**
+     * Calculate the width of the text in font units.
+     *
+     * @param text the text
+     * @return the width in font units
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float getStringWidth(CharSequence text) throws IOException {
+        return getStringWidth(text, 0, text.length());
+    }
+
+    /**
+     * Calculate the width of a part of the text in font units.
+     *
+     * @param text the text
+     * @param start index of the first character (inclusive)
+     * @param end index of the last character (exclusive)
+     * @return the width in font units
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float getStringWidth(CharSequence text, int start, int end) throws IOException {
+        float width = 0;
+        for (int i = start; i < end; i++) {
+            width += getCharWidth(text.charAt(i));
+        }
+        return width;
+    }
+
+    /**
+     * @param character the character
+     * @return the width of the character in font units
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float getCharWidth(char character) throws IOException {
+        if (character < LATIN_RANGE) {
+            float width = latinWidths[character];
+            if (!Float.isNaN(width)) {
+                hits++;
+                return width;
+            }
+            misses++;
+            width = font.getStringWidth(String.valueOf(character));
+            latinWidths[character] = width;
+            return width;
+        }
+
+        Float width = overflowWidths.get(character);
+        if (width != null) {
+            hits++;
+            return width;
+        }
+        misses++;
+        width = font.getStringWidth(String.valueOf(character));
+        overflowWidths.put(character, width);
+        return width;
+    }
+
+    /**
+     * @return the font
+     */
+    public PDFont getFont() {
+        return font;
+    }
+
+    /**
+     * @return number of character widths served from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of character widths which had to be resolved by the font
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
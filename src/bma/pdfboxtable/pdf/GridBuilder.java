@@ -0,0 +1,184 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+
+/**
+ * Collect the grid lines of the tables from one page and draw them at once.
+ *
+ * Duplicate lines (e.g. bottom line of a row and top line of the next row) and lines which continue each other (e.g.
+ * left line of the cells from the same column) are merged, and all the lines are drawn as one path with only one
+ * stroke.
+ *
+ * @author Bogdan Aldea
+ */
+public class GridBuilder {
+    private final Segments horizontalLines = new Segments();
+    private final Segments verticalLines = new Segments();
+
+    /**
+     * @param y the y coordinate of the line
+     * @param xStart the x coordinate of one end
+     * @param xEnd the x coordinate of the other end
+     */
+    public void addHorizontalLine(float y, float xStart, float xEnd) {
+        horizontalLines.add(y, xStart, xEnd);
+    }
+
+    /**
+     * @param x the x coordinate of the line
+     * @param yStart the y coordinate of one end
+     * @param yEnd the y coordinate of the other end
+     */
+    public void addVerticalLine(float x, float yStart, float yEnd) {
+        verticalLines.add(x, yStart, yEnd);
+    }
+
+    /**
+     * @return true if there are no lines to draw
+     */
+    public boolean isEmpty() {
+        return horizontalLines.count == 0 && verticalLines.count == 0;
+    }
+
+    /**
+     * Draw all the collected lines and remove them from the builder.
+     *
+     * @param contentStream page content stream
+     * @throws IOException If there is an error writing to the page contents.
+     */
+    public void draw(PDPageContentStream contentStream) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+
+        horizontalLines.sortAndMerge();
+        for (int i = 0; i < horizontalLines.count; i++) {
+            contentStream.moveTo(horizontalLines.getStart(i), horizontalLines.getPosition(i));
+            contentStream.lineTo(horizontalLines.getEnd(i), horizontalLines.getPosition(i));
+        }
+
+        verticalLines.sortAndMerge();
+        for (int i = 0; i < verticalLines.count; i++) {
+            contentStream.moveTo(verticalLines.getPosition(i), verticalLines.getStart(i));
+            contentStream.lineTo(verticalLines.getPosition(i), verticalLines.getEnd(i));
+        }
+
+        contentStream.stroke();
+        clear();
+    }
+
+    /**
+     * Remove all the collected lines.
+     */
+    public void clear() {
+        horizontalLines.count = 0;
+        verticalLines.count = 0;
+    }
+
+    /*
+     * Line segments with the same orientation. Each segment is kept as position (y for horizontal or x for vertical
+     * lines), start and end in a float buffer which is reused from one page to another.
+     */
+    private static class Segments {
+        private static final int SEGMENT_SIZE = 3;
+        private static final float EPSILON = 0.001f;
+
+        private float[] data = new float[SEGMENT_SIZE * 64];
+        private float[] merged = new float[data.length];
+        private int[] order = new int[64];
+        private int[] scratch = new int[64];
+        private int count;
+
+        void add(float position, float start, float end) {
+            if (SEGMENT_SIZE * (count + 1) > data.length) {
+                data = Arrays.copyOf(data, 2 * data.length);
+            }
+            int offset = SEGMENT_SIZE * count;
+            data[offset] = position;
+            data[offset + 1] = Math.min(start, end);
+            data[offset + 2] = Math.max(start, end);
+            count++;
+        }
+
+        float getPosition(int segment) {
+            return data[SEGMENT_SIZE * segment];
+        }
+
+        float getStart(int segment) {
+            return data[SEGMENT_SIZE * segment + 1];
+        }
+
+        float getEnd(int segment) {
+            return data[SEGMENT_SIZE * segment + 2];
+        }
+
+        /*
+         * Sort the segments by position and start and merge the ones which are on the same line and touch or overlap.
+         */
+        void sortAndMerge() {
+            if (count == 0) {
+                return;
+            }
+            if (order.length < count) {
+                order = new int[data.length / SEGMENT_SIZE];
+                scratch = new int[order.length];
+            }
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            mergeSort(0, count);
+
+            if (merged.length < data.length) {
+                merged = new float[data.length];
+            }
+            int mergedCount = 0;
+            for (int i = 0; i < count; i++) {
+                int segment = order[i];
+                int last = SEGMENT_SIZE * (mergedCount - 1);
+                if (mergedCount > 0 && Math.abs(merged[last] - getPosition(segment)) < EPSILON
+                        && getStart(segment) <= merged[last + 2] + EPSILON) {
+                    merged[last + 2] = Math.max(merged[last + 2], getEnd(segment));
+                } else {
+                    int offset = SEGMENT_SIZE * mergedCount;
+                    merged[offset] = getPosition(segment);
+                    merged[offset + 1] = getStart(segment);
+                    merged[offset + 2] = getEnd(segment);
+                    mergedCount++;
+                }
+            }
+            // swap the buffers, the old one is reused for the next merge
+            float[] sorted = data;
+            data = merged;
+            merged = sorted;
+            count = mergedCount;
+        }
+
+        private void mergeSort(int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(from, middle);
+            mergeSort(middle, to);
+
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compare(order[left], order[right]) <= 0)) {
+                    scratch[i] = order[left++];
+                } else {
+                    scratch[i] = order[right++];
+                }
+            }
+            System.arraycopy(scratch, from, order, from, to - from);
+        }
+
+        private int compare(int first, int second) {
+            int result = Float.compare(getPosition(first), getPosition(second));
+            return result != 0 ? result : Float.compare(getStart(first), getStart(second));
+        }
+    }
+}
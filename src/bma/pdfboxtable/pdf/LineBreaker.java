@@ -0,0 +1,183 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Split a text at space (" ") on lines based on the available width.
+ *
+ * The text is scanned only once and the result is kept as start and end offsets of each line in an int buffer which
+ * is reused for the next text, so there is no allocation while wrapping cells. A line is converted to string only when
+ * it is drawn.
+ *
+ * TODO support other word delimiter beside space (e.g. tab)
+ *
+ * @author Bogdan Aldea
+ */
+public class LineBreaker {
+    private static final float FONT_FACTOR = 1000f;
+    private static final int DEFAULT_LINES_CAPACITY = 4;
+    private static final char WORD_DELIMITER = ' ';
+
+    private CharSequence text = "";
+    private int[] lineOffsets = new int[2 * DEFAULT_LINES_CAPACITY];
+    private int lineCount;
+
+    /**
+     * Split the text on lines. The result of the previous call is discarded.
+     *
+     * A word which is wider than the available width is added alone on the line.
+     *
+     * @param newText the text to split, null is handled as an empty text
+     * @param maxWidth available width in points
+     * @param glyphWidthCache glyph widths of the font used to draw the text
+     * @param fontSize font size
+     * @throws IOException If there is an error getting the width information.
+     */
+    public void breakLines(CharSequence newText, float maxWidth, GlyphWidthCache glyphWidthCache, float fontSize)
+            throws IOException {
+        text = newText != null ? newText : "";
+        lineCount = 0;
+
+        // work in font units to avoid the conversion for every character
+        float maxUnits = maxWidth * FONT_FACTOR / fontSize;
+        float spaceWidth = glyphWidthCache.getCharWidth(WORD_DELIMITER);
+
+        int length = text.length();
+        float textWidth = 0;
+        int lineStart = -1;
+        int lineEnd = -1;
+        float lineWidth = 0;
+        int wordStart = -1;
+        float wordWidth = 0;
+        float gapWidth = 0;
+        for (int i = 0; i <= length; i++) {
+            boolean endOfText = i == length;
+            char character = endOfText ? WORD_DELIMITER : text.charAt(i);
+
+            if (character != WORD_DELIMITER) {
+                if (wordStart < 0) {
+                    wordStart = i;
+                    wordWidth = 0;
+                }
+                float charWidth = glyphWidthCache.getCharWidth(character);
+                wordWidth += charWidth;
+                textWidth += charWidth;
+                continue;
+            }
+
+            if (wordStart >= 0) {
+                if (lineStart < 0) {
+                    // this is the first word on the line
+                    lineStart = wordStart;
+                    lineWidth = wordWidth;
+                } else if (lineWidth + gapWidth + wordWidth <= maxUnits) {
+                    lineWidth += gapWidth + wordWidth;
+                } else {
+                    addLine(lineStart, lineEnd);
+                    lineStart = wordStart;
+                    lineWidth = wordWidth;
+                }
+                lineEnd = i;
+                wordStart = -1;
+                gapWidth = 0;
+            }
+
+            if (!endOfText) {
+                gapWidth += spaceWidth;
+                textWidth += spaceWidth;
+            }
+        }
+
+        if (lineStart >= 0) {
+            addLine(lineStart, lineEnd);
+        }
+
+        if (lineCount <= 1 && textWidth <= maxUnits) {
+            // the whole text fits on one line, keep it as it is
+            lineCount = 0;
+            addLine(0, length);
+        } else if (lineCount == 0) {
+            addEmptyLine();
+        }
+    }
+
+    /**
+     * Add an empty line after the existing lines.
+     */
+    public void addEmptyLine() {
+        addLine(text.length(), text.length());
+    }
+
+    /*
+     * @return start and end offsets of the lines
+     */
+    int[] copyLines() {
+        return Arrays.copyOf(lineOffsets, 2 * lineCount);
+    }
+
+    /*
+     * Set lines which were computed before for the same text.
+     */
+    void setLines(CharSequence newText, int[] lines) {
+        text = newText;
+        if (lineOffsets.length < lines.length) {
+            lineOffsets = Arrays.copyOf(lines, lines.length);
+        } else {
+            System.arraycopy(lines, 0, lineOffsets, 0, lines.length);
+        }
+        lineCount = lines.length / 2;
+    }
+
+    private void addLine(int start, int end) {
+        if (2 * lineCount + 1 >= lineOffsets.length) {
+            lineOffsets = Arrays.copyOf(lineOffsets, 2 * lineOffsets.length);
+        }
+        lineOffsets[2 * lineCount] = start;
+        lineOffsets[2 * lineCount + 1] = end;
+        lineCount++;
+    }
+
+    /**
+     * @return the text which was split
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param lineNumber line number
+     * @return offset of the first character of the line in the text
+     */
+    public int getLineStart(int lineNumber) {
+        return lineOffsets[2 * lineNumber];
+    }
+
+    /**
+     * @param lineNumber line number
+     * @return offset after the last character of the line in the text
+     */
+    public int getLineEnd(int lineNumber) {
+        return lineOffsets[2 * lineNumber + 1];
+    }
+
+    /**
+     * @param lineNumber line number
+     * @return the line content
+     */
+    public String getLine(int lineNumber) {
+        int start = getLineStart(lineNumber);
+        int end = getLineEnd(lineNumber);
+        if (start == 0 && end == text.length()) {
+            return text.toString();
+        }
+        return text.subSequence(start, end).toString();
+    }
+}
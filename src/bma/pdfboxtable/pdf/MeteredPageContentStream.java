@@ -0,0 +1,58 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+
+/**
+ * Page content stream which counts the operators and the bytes written. It is used only when the metrics of the
+ * document are enabled.
+ *
+ * Every operator written by {@link PDPageContentStream} ends with a new line, the operands and the strings don't.
+ * The names of fonts, colour spaces and XObjects are written around {@link #appendRawCommands(byte[])}, so the bytes
+ * are taken from the content of the page when the stream is closed.
+ *
+ * @author Bogdan Aldea
+ */
+class MeteredPageContentStream extends PDPageContentStream {
+    private final COSStream contents;
+    private long operators;
+    private long bytes;
+
+    MeteredPageContentStream(PDDocument document, PDPage sourcePage) throws IOException {
+        super(document, sourcePage);
+        contents = sourcePage.getContents().getStream();
+    }
+
+    @Override
+    public void appendRawCommands(byte[] commands) throws IOException {
+        super.appendRawCommands(commands);
+        if (commands.length > 0 && commands[commands.length - 1] == '\n') {
+            operators++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        // the unfiltered content is not copied, the stream only reads from its range of the document storage
+        try (InputStream content = contents.getUnfilteredStream()) {
+            bytes = content.available();
+        }
+    }
+
+    long getOperators() {
+        return operators;
+    }
+
+    /*
+     * @return bytes of the content before compression, 0 until the stream is closed
+     */
+    long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,30 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream which only flushes the underlying stream when it is closed.
+ *
+ * {@link org.apache.pdfbox.pdmodel.PDDocument#save(OutputStream)} closes the output at the end, so a stream owned by
+ * the caller (e.g. a response channel) is wrapped in this one to stay open.
+ *
+ * @author Bogdan Aldea
+ */
+class NonClosingOutputStream extends FilterOutputStream {
+
+    NonClosingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -1,24 +1,56 @@
 package bma.pdfboxtable.pdf;
 
-import java.awt.Color;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Deflater;
+
+import bma.pdfboxtable.metrics.Counter;
+import bma.pdfboxtable.metrics.MetricsListener;
+import bma.pdfboxtable.metrics.MetricsRecorder;
+import bma.pdfboxtable.metrics.Phase;
 import bma.pdfboxtable.table.Table;
 import bma.pdfboxtable.table.TableColumn;
+import bma.pdfboxtable.table.TableLayoutIndex;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessBuffer;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageNode;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
 import static bma.pdfboxtable.table.TextVerticalAlignment.BOTTOM;
 import static bma.pdfboxtable.table.TextVerticalAlignment.TOP;
 import static bma.pdfboxtable.table.TextAlignment.RIGHT;
@@ -39,6 +71,9 @@ public class PageablePdf extends PDDocument {
     private static final float DEFAULT_FOOTER_BOTTOM_PADDING = 5f * MM_TO_POINTS;
     private static final float DEFAULT_FOOTER_FONT_SIZE = 8f;
     private static final PDFont DEFAULT_FOOTER_FONT = PDType1Font.HELVETICA_OBLIQUE;
+    private static final int DEFAULT_LAYOUT_CHUNK_SIZE = 1024;
+    private static final int PAGES_PER_THREAD = 4;
+    private static final int SAVE_BUFFER_SIZE = 64 * 1024;
 
     private PDFont fontBold = PDType1Font.HELVETICA_BOLD;
     private PDFont fontNormal = PDType1Font.HELVETICA;
@@ -60,6 +95,13 @@ public class PageablePdf extends PDDocument {
 
     private PDPage currentPage;
     private PDPageContentStream currentPageContentStream;
+    // the content stream of the current page is open and being written
+    private boolean pageContentOpen;
+    // font already set in the current page content stream, used to avoid setting the same font again
+    private PDFont contentStreamFont;
+    private float contentStreamFontSize;
+    // subset of the content stream font, null if the font is not subset
+    private FontSubset contentStreamFontSubset;
     private float contentTopPadding;
     private float contentRightPadding;
     private float contentBottomPadding;
@@ -70,6 +112,37 @@ public class PageablePdf extends PDDocument {
 
     private List<String> footerLines;
 
+    // the streams are kept in a scratch file
+    private boolean scratchFile;
+    // reusable state, kept by the pool when the document is released
+    private DocumentScratch scratch;
+    private Map<PDFont, GlyphWidthCache> glyphWidthCaches;
+    private Map<PDFont, FontMetrics> fontMetrics;
+    private FontRegistry fontRegistry = FontRegistry.getDefault();
+    private final RowLayouter rowLayouter = new RowLayouter(this);
+    private RowLayout rowLayout;
+    private final ColumnWidthCalculator columnWidthCalculator = new ColumnWidthCalculator(this);
+    private ForkJoinPool layoutPool;
+    private ForkJoinPool pagePool;
+    private int layoutChunkSize = DEFAULT_LAYOUT_CHUNK_SIZE;
+    private boolean compressContent;
+    private boolean subsetFonts;
+    private final Map<PDFont, FontSubset> fontSubsets = new HashMap<>();
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private ForkJoinPool compressionPool;
+    private GridBuilder gridBuilder;
+    private BackgroundBuilder backgroundBuilder;
+    private MetricsListener metricsListener = MetricsListener.NO_OP;
+    private boolean metricsEnabled;
+    // header placed on the pages added while a table with repeated headers is drawn
+    private PDXObjectForm repeatedHeader;
+    private float repeatedHeaderBottomY;
+    // static layers of the template the document was created from
+    private DocumentTemplate template;
+    private boolean templateTableHeaderPending;
+    // resources of the template copied to this document, shared by the layers so a font is embedded only once
+    private Map<COSBase, COSBase> templateResourceCopies;
+
     /**
      * Create a new document specifying page size.
      *
@@ -77,8 +150,47 @@ public class PageablePdf extends PDDocument {
      * @param pageHeight page height in points
      */
     public PageablePdf(float pageWidth, float pageHeight) {
+        this(pageWidth, pageHeight, new DocumentScratch());
+    }
+
+    /*
+     * Document using the state of a released document.
+     */
+    PageablePdf(float pageWidth, float pageHeight, DocumentScratch scratch) {
+        super(createEmptyDocument(scratch.getScratchBuffer()));
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        useScratch(scratch);
+    }
+
+    /**
+     * Create a new document specifying page size, which keeps the content of the pages in a scratch file instead of
+     * memory.
+     *
+     * The content stream of a page is written to the scratch file while the page is drawn and it is released from
+     * memory when the page is finished (see {@link #changePageIfNeeded(float)}), so the memory doesn't grow with the
+     * number of pages. The values which are known only at the end (e.g. total number of pages in the footer) are
+     * drawn by {@link #closeDocument()}. The scratch file is deleted when the document is closed.
+     *
+     * @param pageWidth page with in points
+     * @param pageHeight page height in points
+     * @param scratchDirectory directory for the scratch file, if null the default temporary directory is used
+     * @throws IOException If the scratch file cannot be created.
+     */
+    public PageablePdf(float pageWidth, float pageHeight, File scratchDirectory) throws IOException {
+        this(pageWidth, pageHeight, scratchDirectory, new DocumentScratch());
+    }
+
+    /*
+     * Document with a scratch file using the state of a released document.
+     */
+    PageablePdf(float pageWidth, float pageHeight, File scratchDirectory, DocumentScratch scratch)
+            throws IOException {
+        super(createEmptyDocument(scratchDirectory));
         this.pageWidth = pageWidth;
         this.pageHeight = pageHeight;
+        this.scratchFile = true;
+        useScratch(scratch);
     }
 
     /**
@@ -86,6 +198,7 @@ public class PageablePdf extends PDDocument {
      */
     public PageablePdf(COSDocument document) {
         super(document);
+        useScratch(new DocumentScratch());
 
         // set page with and height from the first page
         if (!getDocumentCatalog().getAllPages().isEmpty()) {
@@ -95,6 +208,61 @@ public class PageablePdf extends PDDocument {
         }
     }
 
+    private void useScratch(DocumentScratch newScratch) {
+        scratch = newScratch;
+        glyphWidthCaches = newScratch.getGlyphWidthCaches();
+        fontMetrics = newScratch.getFontMetrics();
+        rowLayout = newScratch.getRowLayout();
+        gridBuilder = newScratch.getGridBuilder();
+        backgroundBuilder = newScratch.getBackgroundBuilder();
+    }
+
+    /*
+     * Give the reusable state to the pool, the document is closed and it is not used after that.
+     *
+     * @return the state, reset for another document, null if it was already given
+     */
+    DocumentScratch detachScratch() {
+        DocumentScratch detached = scratch;
+        scratch = null;
+        if (detached != null) {
+            detached.reset(fontRegistry);
+        }
+        return detached;
+    }
+
+    /*
+     * Same structure as the one created by the default constructor of PDDocument, but with a scratch file for streams.
+     */
+    private static COSDocument createEmptyDocument(File scratchDirectory) throws IOException {
+        return initEmptyDocument(new COSDocument(scratchDirectory));
+    }
+
+    /*
+     * Same structure as the one created by the default constructor of PDDocument, with reusable storage for streams.
+     */
+    private static COSDocument createEmptyDocument(ScratchBuffer scratchBuffer) {
+        return initEmptyDocument(new COSDocument(scratchBuffer));
+    }
+
+    private static COSDocument initEmptyDocument(COSDocument document) {
+        COSDictionary trailer = new COSDictionary();
+        document.setTrailer(trailer);
+
+        COSDictionary rootDictionary = new COSDictionary();
+        trailer.setItem(COSName.ROOT, rootDictionary);
+        rootDictionary.setItem(COSName.TYPE, COSName.CATALOG);
+        rootDictionary.setItem(COSName.VERSION, COSName.getPDFName("1.4"));
+
+        COSDictionary pages = new COSDictionary();
+        rootDictionary.setItem(COSName.PAGES, pages);
+        pages.setItem(COSName.TYPE, COSName.PAGES);
+        pages.setItem(COSName.KIDS, new COSArray());
+        pages.setItem(COSName.COUNT, COSInteger.ZERO);
+
+        return document;
+    }
+
     /**
      * Check if there is enough space for a new line, is not, than go the the next page.
      *
@@ -107,13 +275,47 @@ public class PageablePdf extends PDDocument {
         }
 
         if (getCurrentPositionY() - newLineHeight < contentBottomPadding) {
-            currentPageContentStream.close();
-            addPage(getCurrentPage());
+            finishCurrentPage();
             currentPage = new PDPage(new PDRectangle(getPageWidth(), getPageHeight()));
-            currentPageContentStream = new PDPageContentStream(this, currentPage);
-            setCurrentPosition(getCurrentPositionX(), pageHeight - contentTopPadding - newLineHeight);
+            currentPageContentStream = createPageContentStream(currentPage);
+            setCurrentPosition(getCurrentPositionX(), calculateNewPageTopY(newLineHeight));
+            drawRepeatedHeader();
+        }
+
+    }
+
+    /*
+     * Position of the first line on a new page, below the repeated table header if there is one.
+     */
+    private float calculateNewPageTopY(float newLineHeight) {
+        if (repeatedHeader != null) {
+            return repeatedHeaderBottomY;
+        }
+        return pageHeight - contentTopPadding - newLineHeight;
+    }
+
+    private void drawRepeatedHeader() throws IOException {
+        if (repeatedHeader != null) {
+            // the form has the size of the page and the header is already at its position
+            getCurrentPageContentStream().drawXObject(repeatedHeader, 0, 0, 1, 1);
         }
+    }
 
+    /**
+     * Add a page at the end of the document.
+     *
+     * PDDocument rebuilds the list of kids and counts the pages again for each new page, which makes adding pages
+     * quadratic in the number of pages. Here the page is added directly to the kids of the root node.
+     *
+     * @param page The page to add to the document.
+     */
+    @Override
+    public void addPage(PDPage page) {
+        PDPageNode rootPages = getDocumentCatalog().getPages();
+        COSArray kids = (COSArray) rootPages.getDictionary().getDictionaryObject(COSName.KIDS);
+        kids.add(page.getCOSDictionary());
+        page.setParent(rootPages);
+        rootPages.getDictionary().setLong(COSName.COUNT, rootPages.getCount() + 1);
     }
 
     public void cropCurrentPage() {
@@ -140,6 +342,64 @@ public class PageablePdf extends PDDocument {
         return out.toByteArray();
     }
 
+    /**
+     * Save the document in a buffer from the pool, so the document is not copied and the memory is reused by the
+     * next documents. The buffer should be released when its bytes were sent.
+     *
+     * @param pool the pool
+     * @return the buffer with the document
+     * @throws IOException If there is an error writing the document.
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public DocumentBuffer save(DocumentBufferPool pool) throws IOException, COSVisitorException {
+        DocumentBuffer buffer = pool.acquire();
+        try {
+            save(buffer);
+        } catch (IOException | COSVisitorException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        return buffer;
+    }
+
+    /**
+     * Save the document to a file, through a buffer.
+     *
+     * @param path the file
+     * @throws IOException If there is an error writing the document.
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public void save(Path path) throws IOException, COSVisitorException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(path), SAVE_BUFFER_SIZE)) {
+            save(output);
+        }
+    }
+
+    /**
+     * Save the document to a file. Unlike {@link PDDocument#save(File)} the file is written through a buffer and it
+     * is closed at the end.
+     *
+     * @param file the file
+     * @throws IOException If there is an error writing the document.
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    @Override
+    public void save(File file) throws IOException, COSVisitorException {
+        save(file.toPath());
+    }
+
+    /**
+     * Save the document to a channel (e.g. a socket or a file channel), through a buffer.
+     *
+     * @param channel the channel, it is not closed
+     * @throws IOException If there is an error writing the document.
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public void save(WritableByteChannel channel) throws IOException, COSVisitorException {
+        // the document closes the stream it is saved to, only the buffer is flushed in the channel
+        save(new BufferedOutputStream(new NonClosingOutputStream(Channels.newOutputStream(channel)), SAVE_BUFFER_SIZE));
+    }
+
     /**
      * Set the current position at top left corner.
      *
@@ -169,9 +429,55 @@ public class PageablePdf extends PDDocument {
      */
     private void closeCurrentPageContentStream() throws IOException {
         if (currentPageContentStream != null) {
-            currentPageContentStream.close();
-            addPage(getCurrentPage());
+            finishCurrentPage();
+        }
+    }
+
+    /*
+     * Draw what was collected for the current page, close the current page content stream and add the page to
+     * the document.
+     */
+    private void finishCurrentPage() throws IOException {
+        long start = startTiming();
+        closePageContent();
+        addPage(getCurrentPage());
+        endTiming(Phase.PAGE_BREAK, start);
+        count(Counter.PAGES, 1);
+    }
+
+    /*
+     * Draw what was collected for the current page and close the current page content stream.
+     */
+    private void closePageContent() throws IOException {
+        gridBuilder.draw(currentPageContentStream);
+        currentPageContentStream.close();
+        pageContentOpen = false;
+        countContent(currentPageContentStream);
+        drawPageBackground(getCurrentPage());
+    }
+
+    /*
+     * The backgrounds are drawn in a separate content stream which is placed before the page content, so they stay
+     * under the text and the grid.
+     */
+    private void drawPageBackground(PDPage page) throws IOException {
+        if (backgroundBuilder.isEmpty()) {
+            return;
+        }
+
+        PDPage backgroundPage = new PDPage();
+        PDPageContentStream backgroundContentStream = newPageContentStream(backgroundPage);
+        try {
+            backgroundBuilder.draw(backgroundContentStream);
+        } finally {
+            backgroundContentStream.close();
         }
+        countContent(backgroundContentStream);
+
+        COSArray contents = new COSArray();
+        contents.add(backgroundPage.getContents().getCOSObject());
+        contents.add(page.getContents().getCOSObject());
+        page.getCOSDictionary().setItem(COSName.CONTENTS, contents);
     }
 
     /**
@@ -189,12 +495,99 @@ public class PageablePdf extends PDDocument {
      */
     private PDPageContentStream getCurrentPageContentStream() throws IOException {
         if (currentPageContentStream == null) {
-            currentPageContentStream = new PDPageContentStream(this, getCurrentPage());
+            currentPageContentStream = createPageContentStream(getCurrentPage());
         }
 
         return currentPageContentStream;
     }
 
+    /*
+     * New stream of the document. With a scratch file every stream is written from the end of the file when it is
+     * opened, so a stream written while the content of the current page is open would be overwritten by it. The
+     * streams created in the middle of a page (forms, font copies) are small and they are kept in memory.
+     */
+    COSStream createStream() {
+        if (pageContentOpen && scratchFile) {
+            return new COSStream(new RandomAccessBuffer());
+        }
+        return getDocument().createCOSStream();
+    }
+
+    private PDPageContentStream createPageContentStream(PDPage page) throws IOException {
+        contentStreamFont = null;
+        contentStreamFontSubset = null;
+        contentStreamFontSize = 0;
+        PDPageContentStream contentStream = newPageContentStream(page);
+        pageContentOpen = true;
+        return contentStream;
+    }
+
+    /*
+     * The operators are counted only when the metrics are enabled.
+     */
+    private PDPageContentStream newPageContentStream(PDPage page) throws IOException {
+        return metricsEnabled ? new MeteredPageContentStream(this, page) : new PDPageContentStream(this, page);
+    }
+
+    private void countContent(PDPageContentStream contentStream) {
+        if (contentStream instanceof MeteredPageContentStream) {
+            count(Counter.OPERATORS, ((MeteredPageContentStream) contentStream).getOperators());
+            count(Counter.CONTENT_BYTES, ((MeteredPageContentStream) contentStream).getBytes());
+        }
+    }
+
+    /*
+     * @return start time of a phase, 0 if the metrics are not enabled
+     */
+    private long startTiming() {
+        return metricsEnabled ? System.nanoTime() : 0;
+    }
+
+    private void endTiming(Phase phase, long start) {
+        if (metricsEnabled) {
+            metricsListener.phaseCompleted(phase, System.nanoTime() - start);
+        }
+    }
+
+    private void count(Counter counter, long amount) {
+        if (metricsEnabled) {
+            metricsListener.counted(counter, amount);
+        }
+    }
+
+    /**
+     * Set the font in the current page content stream only if it is not already set.
+     *
+     * The font is part of the graphics state, so it is kept between text objects of the same page.
+     *
+     * @throws IOException If there is an error writing to the page contents.
+     */
+    private void setContentStreamFont(PDFont font, float fontSize) throws IOException {
+        if (font != contentStreamFont || fontSize != contentStreamFontSize) {
+            getCurrentPageContentStream().setFont(font, fontSize);
+            contentStreamFont = font;
+            contentStreamFontSubset = fontSubsets.get(font);
+            contentStreamFontSize = fontSize;
+        }
+    }
+
+    /*
+     * Draw a text with the content stream font, the codes are collected if the font is subset.
+     */
+    private void drawString(String text) throws IOException {
+        if (contentStreamFontSubset != null) {
+            contentStreamFontSubset.addText(text);
+        }
+        getCurrentPageContentStream().drawString(text);
+    }
+
+    private void addUsedText(PDFont font, String text) {
+        FontSubset fontSubset = fontSubsets.get(font);
+        if (fontSubset != null) {
+            fontSubset.addText(text);
+        }
+    }
+
     /**
      * Draw heading in pdf document
      *
@@ -214,10 +607,9 @@ public class PageablePdf extends PDDocument {
                 getCurrentPositionY() - headingHeight);
         getCurrentPageContentStream().moveTextPositionByAmount(getCurrentPositionX(),
                 getCurrentPositionY());
-        getCurrentPageContentStream().setFont(getHeadingFont(),
-                getHeadingFontSize());
+        setContentStreamFont(getHeadingFont(), getHeadingFontSize());
 
-        getCurrentPageContentStream().drawString(heading);
+        drawString(heading);
         getCurrentPageContentStream().endText();
 
         setCurrentPosition(getContentLeftPadding(), getCurrentPositionY()
@@ -245,196 +637,626 @@ public class PageablePdf extends PDDocument {
     public void drawTable(Table table, float topLeftCornerX, float topLeftCornerY)
             throws IOException {
         setCurrentPosition(topLeftCornerX, topLeftCornerY);
+        fitColumnWidths(table);
 
         if (table.isDrawHeaders()) {
-            drawTableHeaders(table);
+            if (isTemplateTableHeader(table)) {
+                useTemplateTableHeader(table);
+            } else {
+                drawTableHeaders(table);
+                if (table.isRepeatHeaders()) {
+                    // the header layout is still in rowLayout
+                    createRepeatedHeader(table, rowLayout);
+                }
+            }
         }
 
-        for (int rowNumber = 0; rowNumber < table.getContent().length; rowNumber++) {
-            drawRow(table, rowNumber);
+        try {
+            // rows are pulled one by one, so a streamed table is never kept in memory
+            Iterator<String[]> rows = table.getRows();
+            if (pagePool != null) {
+                drawRowsWithParallelPages(table, rows);
+            } else if (layoutPool != null) {
+                drawRowsWithParallelLayout(table, rows);
+            } else {
+                while (rows.hasNext()) {
+                    drawRow(table, rows.next());
+                }
+            }
+        } finally {
+            repeatedHeader = null;
         }
     }
 
-    private void drawTableHeaders(Table table) throws IOException {
+    /*
+     * The header is drawn once in a form having the size of the page, at the top of the content. The form is placed on
+     * each page the table continues on, and the rows start below it, the same way they start below a header which goes
+     * on a new page.
+     */
+    private void createRepeatedHeader(Table table, RowLayout headerLayout) throws IOException {
+        long start = startTiming();
+        float headerHeight = headerLayout.getHeight();
+        float headerTopY = pageHeight - contentTopPadding - headerHeight;
 
-        PDFont headerFont = getFontBold();
-        float fontSize = getCurrentFontSize();
-        String[][] cellsContent = new String[table.getColumns().size()][];
-        int necessaryLines = 1;
-        for (int cellNumber = 0; cellNumber < table.getColumns().size(); cellNumber++) {
-            TableColumn column = table.getColumns().get(cellNumber);
-            float contentWidth = column.getWidth() - (2 * table.getCellInsidePadding());
-            List<String> lines = splitTextInLines(column.getHeader(), contentWidth, headerFont, fontSize);
-            cellsContent[cellNumber] = lines.toArray(new String[0]);
-            if (lines.size() > necessaryLines) {
-                necessaryLines = lines.size();
+        PageablePdf pdf = paintTableHeader(table, headerLayout, headerTopY);
+        try {
+            // the resources are the ones of this document, so only the content is copied
+            PDStream formStream = new PDStream(createStream());
+            try (OutputStream output = formStream.createOutputStream()) {
+                output.write(StaticLayer.joinContents(pdf.getCurrentPage()));
             }
+            formStream.addCompression();
+            repeatedHeader = new PDXObjectForm(formStream);
+            repeatedHeader.setResources(pdf.getCurrentPage().findResources());
+            repeatedHeader.setBBox(new PDRectangle(pageWidth, pageHeight));
+            repeatedHeaderBottomY = headerTopY - headerHeight;
+        } finally {
+            pdf.close();
         }
+        endTiming(Phase.PAINT, start);
+    }
 
-        float lineHeight = calculateHeight(headerFont, fontSize);
-        float rowHeight = (necessaryLines * lineHeight) + (2 * table.getCellInsidePadding());
+    /*
+     * Draw the header row in a separate document, on a page of the same size. The caller closes the document.
+     */
+    private PageablePdf paintTableHeader(Table table, RowLayout headerLayout, float headerTopY) throws IOException {
+        PageablePdf pdf = new PageablePdf(pageWidth, pageHeight);
+        try {
+            for (FontMetrics metrics : getTableFontMetrics(table, getFontBold()).values()) {
+                pdf.addFontMetrics(metrics);
+            }
+            pdf.setFontBold(getFontBold());
+            pdf.setCurrentFontSize(getCurrentFontSize());
+            pdf.setCurrentPosition(getCurrentPositionX(), headerTopY);
+            pdf.drawTableHeaderAtCurrentPosition(table, headerLayout);
+            pdf.finishCurrentPage();
+            return pdf;
+        } catch (IOException | RuntimeException e) {
+            pdf.close();
+            throw e;
+        }
+    }
 
-        changePageIfNeeded(rowHeight);
-        float topLeftCornerY = getCurrentPositionY();
-        float topLeftCornerX = getCurrentPositionX();
+    /*
+     * The header of the template table is already on the first page, only the repeated header is created.
+     */
+    private boolean isTemplateTableHeader(Table table) {
+        return templateTableHeaderPending && template.getTable().getColumns() == table.getColumns()
+                && getNumberOfPages() == 0 && getCurrentPositionX() == template.getStartX()
+                && getCurrentPositionY() == template.getStartY();
+    }
+
+    private void useTemplateTableHeader(Table table) throws IOException {
+        templateTableHeaderPending = false;
+        setCurrentPosition(getCurrentPositionX(), template.getTableY());
+        if (table.isRepeatHeaders() && template.getRepeatedHeader() != null) {
+            repeatedHeader = template.getRepeatedHeader().createForm(this);
+            repeatedHeaderBottomY = template.getRepeatedHeaderBottomY();
+        }
+    }
 
-        // draw header background
-        getCurrentPageContentStream().setNonStrokingColor(table.getHeaderBackgroundColor());
-        getCurrentPageContentStream().fillRect(topLeftCornerX, topLeftCornerY - rowHeight, table.getWidth(),
-                rowHeight);
-        getCurrentPageContentStream().setNonStrokingColor(Color.BLACK);
+    /*
+     * Draw the header row of a template table at the current position.
+     *
+     * @return the repeated header, null if the header is not repeated
+     */
+    StaticLayer drawTemplateTableHeader(Table table) throws IOException {
+        fitColumnWidths(table);
+        drawTableHeaders(table);
+        if (!table.isRepeatHeaders()) {
+            return null;
+        }
 
-        // column background override header background
-        drawColumnBackground(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
+        // the header layout is still in rowLayout
+        float headerHeight = rowLayout.getHeight();
+        float headerTopY = pageHeight - contentTopPadding - headerHeight;
+        repeatedHeaderBottomY = headerTopY - headerHeight;
+        PageablePdf pdf = paintTableHeader(table, rowLayout, headerTopY);
+        try {
+            return new StaticLayer(pdf.getCurrentPage());
+        } finally {
+            pdf.close();
+        }
+    }
 
-        if (table.isDrawGrid()) {
-            drawRowGrid(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
+    /*
+     * @return position of the first row on the pages where the template table continues
+     */
+    float getRepeatedHeaderBottomY() {
+        return repeatedHeaderBottomY;
+    }
+
+    /*
+     * Capture what was drawn on the current page, the page is dropped from the document.
+     *
+     * @return the content of the current page, null if nothing was drawn
+     */
+    StaticLayer captureCurrentPage() throws IOException {
+        if (getNumberOfPages() > 0) {
+            throw new IllegalStateException("The static content of a template has to fit on the first page");
+        }
+        if (currentPageContentStream == null) {
+            return null;
         }
 
-        drawRowContent(table, headerFont, cellsContent, lineHeight, rowHeight, false);
+        closePageContent();
+        StaticLayer layer = new StaticLayer(getCurrentPage());
+        currentPage = null;
+        currentPageContentStream = null;
+        return layer;
+    }
 
-        // go on the next line
-        setCurrentPosition(topLeftCornerX, topLeftCornerY - rowHeight);
+    /*
+     * @return the header and the footer drawn on every page
+     */
+    StaticLayer captureHeaderAndFooter() throws IOException {
+        return new StaticLayer(createHeaderAndFooterPage());
+    }
+
+    /*
+     * Start the first page with the static layers of the template.
+     */
+    void startFromTemplate(DocumentTemplate documentTemplate) throws IOException {
+        template = documentTemplate;
+        templateResourceCopies = new IdentityHashMap<>();
+        copyTemplateFonts(documentTemplate);
+        templateTableHeaderPending = documentTemplate.getTable() != null
+                && documentTemplate.getTable().isDrawHeaders();
+        if (documentTemplate.getFirstPage() != null) {
+            getCurrentPageContentStream().drawXObject(documentTemplate.getFirstPage().createForm(this), 0, 0, 1, 1);
+        }
+        setCurrentPosition(documentTemplate.getStartX(), documentTemplate.getStartY());
+    }
+
+    /*
+     * The fonts of the settings are the fonts of the prototype. They are replaced by their copies in this document,
+     * which the static layers use too, so the text drawn on the pages and the static content share the same fonts.
+     */
+    private void copyTemplateFonts(DocumentTemplate documentTemplate) throws IOException {
+        Map<PDFont, PDFont> fontCopies = new IdentityHashMap<>();
+        fontBold = copyTemplateFont(documentTemplate, fontBold, fontCopies);
+        fontNormal = copyTemplateFont(documentTemplate, fontNormal, fontCopies);
+        currentFont = copyTemplateFont(documentTemplate, currentFont, fontCopies);
+        headingFont = copyTemplateFont(documentTemplate, headingFont, fontCopies);
+        footerFont = copyTemplateFont(documentTemplate, footerFont, fontCopies);
+    }
 
+    private PDFont copyTemplateFont(DocumentTemplate documentTemplate, PDFont font, Map<PDFont, PDFont> fontCopies)
+            throws IOException {
+        PDFont copy = fontCopies.get(font);
+        if (copy == null) {
+            copy = documentTemplate.copyFont(font, this);
+            addFontMetrics(getFontMetrics(font).forFont(copy));
+            fontCopies.put(font, copy);
+        }
+        return copy;
+    }
+
+    /*
+     * @return the fonts of the settings, copied to the documents created from a template
+     */
+    List<PDFont> getSettingsFonts() {
+        return Arrays.asList(fontBold, fontNormal, currentFont, headingFont, footerFont);
+    }
+
+    /*
+     * @return the copies of the template resources already made in this document, by original object
+     */
+    Map<COSBase, COSBase> getTemplateResourceCopies() {
+        return templateResourceCopies;
     }
 
-    private void drawRow(Table table, int rowNumber) throws IOException {
+    /*
+     * Copy the fonts, the sizes, the paddings and the footer, and the font metrics which were already loaded.
+     */
+    void copySettingsTo(PageablePdf target) {
+        target.fontBold = fontBold;
+        target.fontNormal = fontNormal;
+        target.currentFont = currentFont;
+        target.currentFontSize = currentFontSize;
+        target.headingFontSize = headingFontSize;
+        target.headingFont = headingFont;
+        target.headingBottomPadding = headingBottomPadding;
+        target.headingTopPadding = headingTopPadding;
+        target.paragraphPadding = paragraphPadding;
+        target.footerBottomPadding = footerBottomPadding;
+        target.footerFontSize = footerFontSize;
+        target.footerFont = footerFont;
+        target.includePageNumber = includePageNumber;
+        target.contentTopPadding = contentTopPadding;
+        target.contentRightPadding = contentRightPadding;
+        target.contentBottomPadding = contentBottomPadding;
+        target.contentLeftPadding = contentLeftPadding;
+        target.footerLines = footerLines;
+        target.fontRegistry = fontRegistry;
+        target.fontMetrics.putAll(fontMetrics);
+        target.layoutPool = layoutPool;
+        target.pagePool = pagePool;
+        target.layoutChunkSize = layoutChunkSize;
+        target.compressContent = compressContent;
+        target.compressionLevel = compressionLevel;
+        target.compressionPool = compressionPool;
+        target.subsetFonts = subsetFonts;
+    }
 
+    /*
+     * The rows are laid out in chunks on the layout pool and then drawn in order on the current thread. Only one chunk
+     * of rows is kept in memory.
+     */
+    private void drawRowsWithParallelLayout(Table table, Iterator<String[]> rows) throws IOException {
         PDFont rowFont = getCurrentFont();
         float fontSize = getCurrentFontSize();
+        float lineHeight = calculateHeight(rowFont, fontSize);
+        Map<PDFont, FontMetrics> sharedFontMetrics = Collections.singletonMap(rowFont, getFontMetrics(rowFont));
+
+        String[][] chunk = new String[layoutChunkSize][];
+        RowLayout[] layouts = new RowLayout[layoutChunkSize];
+        for (int i = 0; i < layoutChunkSize; i++) {
+            layouts[i] = new RowLayout();
+        }
+
+        while (rows.hasNext()) {
+            int chunkSize = 0;
+            while (chunkSize < layoutChunkSize && rows.hasNext()) {
+                chunk[chunkSize++] = rows.next();
+            }
 
-        String[] row = table.getContent()[rowNumber];
-        String[][] cellsContentLines = new String[row.length][];
-        int necessaryLines = 1;
-        for (int cellNumber = 0; cellNumber < row.length; cellNumber++) {
-            String[] lines = generateRowContentLines(table, rowFont, fontSize, row, cellNumber);
-            cellsContentLines[cellNumber] = lines;
-            if (lines.length > necessaryLines) {
-                necessaryLines = lines.length;
+            long start = startTiming();
+            layoutRows(layoutPool, new RowLayoutTask(table, chunk, layouts, 0, chunkSize, rowFont, fontSize,
+                    lineHeight, sharedFontMetrics));
+            endTiming(Phase.WRAP, start);
+
+            for (int i = 0; i < chunkSize; i++) {
+                drawRow(table, layouts[i]);
             }
+            Arrays.fill(chunk, 0, chunkSize, null);
         }
+    }
 
+    /*
+     * The rows are laid out in chunks and paginated from their heights, the same way changePageIfNeeded does it. The
+     * pages which are complete are drawn in parallel, each one in a separate document, and their content streams are
+     * copied in order to this document. The rows of the current page and of the last page of the table are drawn on
+     * the current thread, because these pages are shared with the content drawn before and after the table.
+     */
+    private void drawRowsWithParallelPages(Table table, Iterator<String[]> rows) throws IOException {
+        PDFont rowFont = getCurrentFont();
+        float fontSize = getCurrentFontSize();
         float lineHeight = calculateHeight(rowFont, fontSize);
-        float rowHeight = (necessaryLines * lineHeight) + (2 * table.getCellInsidePadding());
+        float tableX = getCurrentPositionX();
+        Map<PDFont, FontMetrics> sharedFontMetrics = getTableFontMetrics(table, rowFont);
+        int pagesPerBatch = PAGES_PER_THREAD * pagePool.getParallelism();
+
+        String[][] chunk = new String[layoutChunkSize][];
+        List<PageRows> completePages = new ArrayList<>();
+        // the first page after the current one which is not complete yet
+        PageRows nextPage = null;
+
+        while (rows.hasNext()) {
+            int chunkSize = 0;
+            while (chunkSize < layoutChunkSize && rows.hasNext()) {
+                chunk[chunkSize++] = rows.next();
+            }
 
-        changePageIfNeeded(rowHeight);
-        float topLeftCornerX = getCurrentPositionX();
-        float topLeftCornerY = getCurrentPositionY();
+            // the layouts are kept until their page is drawn, so they are not reused
+            RowLayout[] layouts = new RowLayout[chunkSize];
+            for (int i = 0; i < chunkSize; i++) {
+                layouts[i] = new RowLayout();
+            }
+            long start = startTiming();
+            layoutRows(pagePool, new RowLayoutTask(table, chunk, layouts, 0, chunkSize, rowFont, fontSize,
+                    lineHeight, sharedFontMetrics));
+            endTiming(Phase.WRAP, start);
+            Arrays.fill(chunk, 0, chunkSize, null);
+
+            for (RowLayout layout : layouts) {
+                float rowHeight = layout.getHeight();
+                if (nextPage == null) {
+                    if (currentPageContentStream == null
+                            || getCurrentPositionY() - rowHeight >= contentBottomPadding) {
+                        drawRow(table, layout);
+                        continue;
+                    }
+                    finishCurrentPage();
+                    nextPage = new PageRows(calculateNewPageTopY(rowHeight));
+                } else if (nextPage.getBottomY() - rowHeight < contentBottomPadding) {
+                    completePages.add(nextPage);
+                    nextPage = new PageRows(calculateNewPageTopY(rowHeight));
+                    if (completePages.size() >= pagesPerBatch) {
+                        drawPagesInParallel(table, completePages, tableX, sharedFontMetrics);
+                        completePages.clear();
+                    }
+                }
+                nextPage.addRow(layout);
+            }
+        }
 
-        drawColumnBackground(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
+        drawPagesInParallel(table, completePages, tableX, sharedFontMetrics);
 
-        if (table.isDrawGrid()) {
-            drawRowGrid(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
+        if (nextPage != null) {
+            currentPage = new PDPage(new PDRectangle(getPageWidth(), getPageHeight()));
+            currentPageContentStream = createPageContentStream(currentPage);
+            setCurrentPosition(tableX, nextPage.getTopY());
+            drawRepeatedHeader();
+            for (RowLayout layout : nextPage.getRows()) {
+                drawRowAtCurrentPosition(table, layout);
+            }
+        }
+    }
+
+    /*
+     * Draw the pages on the page pool and add them to this document in order.
+     */
+    private void drawPagesInParallel(Table table, List<PageRows> pages, float tableX,
+                                     Map<PDFont, FontMetrics> sharedFontMetrics) throws IOException {
+        if (pages.isEmpty()) {
+            return;
         }
 
-        // draw row content
-        drawRowContent(table, rowFont, cellsContentLines, lineHeight, rowHeight, true);
+        PaintedPage[] paintedPages = new PaintedPage[pages.size()];
+        PagePaintTask task = new PagePaintTask(table, pages, paintedPages, 0, pages.size(), tableX, getCurrentFont(),
+                getCurrentFontSize(), getPageWidth(), getPageHeight(), sharedFontMetrics, fontSubsets.values(),
+                repeatedHeader, metricsEnabled);
+        try {
+            pagePool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-        // go on the next line
-        setCurrentPosition(topLeftCornerX, topLeftCornerY - rowHeight);
+        for (PaintedPage paintedPage : paintedPages) {
+            long start = startTiming();
+            addPage(paintedPage.createPage(this));
+            for (FontSubset pageSubset : paintedPage.getFontSubsets()) {
+                fontSubsets.get(pageSubset.getFont()).addCodes(pageSubset);
+            }
+            endTiming(Phase.PAGE_BREAK, start);
+            if (metricsEnabled) {
+                // the time is the one spent on the pool
+                paintedPage.getMetrics().replayTo(metricsListener);
+            }
+        }
+    }
+
+    private static void layoutRows(ForkJoinPool pool, RowLayoutTask task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
+    /*
+     * Metrics of all the fonts used to draw the rows of the table.
+     */
+    private Map<PDFont, FontMetrics> getTableFontMetrics(Table table, PDFont rowFont) throws IOException {
+        Map<PDFont, FontMetrics> tableFontMetrics = new HashMap<>();
+        tableFontMetrics.put(rowFont, getFontMetrics(rowFont));
+        for (TableColumn column : table.getColumns()) {
+            if (column.getFont() != null) {
+                tableFontMetrics.put(column.getFont(), getFontMetrics(column.getFont()));
+            }
+        }
+        return tableFontMetrics;
     }
 
     /**
-     * This is splitting the row content based on available space on different lines.
+     * Compute the height of the header and of every row of the table with the current fonts, without drawing them.
+     * The result is kept in the table, so it is computed only once.
      *
-     * There are some limitation on next column overlap which should be addressed:
-     *  - treat the case when next column vertical alignment is not BOTTOM
-     *  - treat the case when column content will not fit in on line
-     *  - do better space management, if next column alignment is center or right.
-     *  - (optional) make to overlap more than one column
-     *  In all these cases we don't do the overlap
+     * @param table pdf table, the rows cannot be streamed because they are read twice
+     * @return the layout index of the table
+     * @throws IOException If there is an error getting the width information.
+     */
+    public TableLayoutIndex getLayoutIndex(Table table) throws IOException {
+        PDFont rowFont = getCurrentFont();
+        PDFont headerFont = getFontBold();
+        float fontSize = getCurrentFontSize();
+        TableLayoutIndex layoutIndex = table.getLayoutIndex();
+        if (layoutIndex != null && layoutIndex.isComputedFor(rowFont, headerFont, fontSize)
+                && layoutIndex.hasHeaders() == table.isDrawHeaders()
+                && layoutIndex.isRepeatHeaders() == (table.isDrawHeaders() && table.isRepeatHeaders())) {
+            return layoutIndex;
+        }
+
+        if (table.isStreamed()) {
+            throw new IllegalArgumentException("The layout index cannot be computed for a table with streamed rows");
+        }
+        fitColumnWidths(table);
+
+        long start = startTiming();
+        float headerHeight = 0;
+        if (table.isDrawHeaders()) {
+            rowLayouter.layoutHeaders(table, headerFont, fontSize, calculateHeight(headerFont, fontSize), rowLayout);
+            headerHeight = rowLayout.getHeight();
+        }
+
+        String[][] content = table.getContent();
+        float lineHeight = calculateHeight(rowFont, fontSize);
+        float[] rowHeights = new float[content.length];
+        for (int rowNumber = 0; rowNumber < content.length; rowNumber++) {
+            rowLayouter.layoutRow(table, content[rowNumber], rowFont, fontSize, lineHeight, rowLayout);
+            rowHeights[rowNumber] = rowLayout.getHeight();
+        }
+
+        layoutIndex = new TableLayoutIndex(rowFont, headerFont, fontSize, table.isDrawHeaders(),
+                table.isRepeatHeaders(), headerHeight, rowHeights);
+        table.setLayoutIndex(layoutIndex);
+        endTiming(Phase.MEASURE, start);
+        return layoutIndex;
+    }
+
+    /**
+     * Compute the column widths of a table in auto width mode, from the current position to the right padding of the
+     * page. Nothing is done if the table is not in auto width mode or if its column widths were already computed.
      *
-     * TODO fix all the above limitations
+     * @param table pdf table
+     * @throws IOException If there is an error getting the width information.
      */
-    private String[] generateRowContentLines(Table table, PDFont rowFont, float fontSize, String[] row, int cellNumber) throws IOException {
-        if (row[cellNumber] == null) {
-            String[] emptyLine = {""};
-            return emptyLine;
+    public void fitColumnWidths(Table table) throws IOException {
+        if (!table.isColumnWidthsPending()) {
+            return;
         }
 
-        TableColumn column = table.getColumns().get(cellNumber);
-        float contentWidth = column.getWidth() - (2 * table.getCellInsidePadding());
-        String rowContent = row[cellNumber];
+        long start = startTiming();
+        float availableWidth = pageWidth - contentRightPadding - getCurrentPositionX();
+        table.setColumnWidths(columnWidthCalculator.calculateWidths(table, getCurrentFont(), getFontBold(),
+                getCurrentFontSize(), availableWidth));
+        endTiming(Phase.MEASURE, start);
+    }
+
+    /**
+     * Calculate the number of pages spanned by the table if it is drawn at the current position, without drawing it.
+     *
+     * @param table pdf table, the rows cannot be streamed because they are read twice
+     * @return number of pages, the current page included
+     * @throws IOException If there is an error getting the width information.
+     */
+    public int calculateNumberOfPages(Table table) throws IOException {
+        return getLayoutIndex(table).getNumberOfPages(getCurrentPositionY(), pageHeight - contentTopPadding,
+                contentBottomPadding);
+    }
+
+    private void drawTableHeaders(Table table) throws IOException {
+
+        PDFont headerFont = getFontBold();
+        float fontSize = getCurrentFontSize();
+        long start = startTiming();
+        rowLayouter.layoutHeaders(table, headerFont, fontSize, calculateHeight(headerFont, fontSize), rowLayout);
+        endTiming(Phase.WRAP, start);
+        float rowHeight = rowLayout.getHeight();
+
+        changePageIfNeeded(rowHeight);
+        drawTableHeaderAtCurrentPosition(table, rowLayout);
+    }
+
+    /*
+     * Draw the header row which is already laid out on the current page.
+     */
+    private void drawTableHeaderAtCurrentPosition(Table table, RowLayout headerLayout) throws IOException {
+        long start = startTiming();
+        float rowHeight = headerLayout.getHeight();
+        float topLeftCornerY = getCurrentPositionY();
+        float topLeftCornerX = getCurrentPositionX();
+
+        // draw header background
+        backgroundBuilder.addRectangle(table.getHeaderBackgroundColor(), topLeftCornerX, topLeftCornerY,
+                table.getWidth(), rowHeight);
+
+        // column background override header background
+        drawColumnBackground(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
 
-        if (!column.isOverlapNextColumn() || isLastColumn(table, cellNumber)) {
-            return splitTextInLines(rowContent, contentWidth, rowFont, fontSize).toArray(new String[0]);
+        if (table.isDrawGrid()) {
+            drawRowGrid(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
         }
 
-        TableColumn nextColumn = table.getColumns().get(cellNumber + 1);
+        drawRowContent(table, getFontBold(), headerLayout, false);
+
+        // go on the next line
+        setCurrentPosition(topLeftCornerX, topLeftCornerY - rowHeight);
+        endTiming(Phase.PAINT, start);
+
+    }
+
+    private void drawRow(Table table, String[] row) throws IOException {
+        PDFont rowFont = getCurrentFont();
+        float fontSize = getCurrentFontSize();
+        long start = startTiming();
+        rowLayouter.layoutRow(table, row, rowFont, fontSize, calculateHeight(rowFont, fontSize), rowLayout);
+        endTiming(Phase.WRAP, start);
+        drawRow(table, rowLayout);
+    }
+
+    /*
+     * Draw a row which is already laid out.
+     */
+    private void drawRow(Table table, RowLayout layout) throws IOException {
+        changePageIfNeeded(layout.getHeight());
+        drawRowAtCurrentPosition(table, layout);
+    }
 
-        // NOT SUPPORTED YET: other alignment
-        if (nextColumn.getVerticalAlignment() != BOTTOM || nextColumn.getAlignment() != RIGHT) {
-            return splitTextInLines(rowContent, contentWidth, rowFont, fontSize).toArray(new String[0]);
-        }
+    /*
+     * Draw a row which is already laid out on the current page, without checking if it fits.
+     */
+    private void drawRowAtCurrentPosition(Table table, RowLayout layout) throws IOException {
+        long start = startTiming();
+        float rowHeight = layout.getHeight();
+        float topLeftCornerX = getCurrentPositionX();
+        float topLeftCornerY = getCurrentPositionY();
 
-        float nextColumnContentAvailableWidth = nextColumn.getWidth() - (2 * table.getCellInsidePadding());
-        String nextColumnContent = row[cellNumber + 1];
-        List<String> nextColumnLines = splitTextInLines(nextColumnContent, nextColumnContentAvailableWidth, rowFont, fontSize);
+        drawColumnBackground(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
 
-        // NOT SUPPORTED YET: next column require more than one line
-        if (nextColumnLines.size() > 1) {
-            return splitTextInLines(rowContent, contentWidth, rowFont, fontSize).toArray(new String[0]);
+        if (table.isDrawGrid()) {
+            drawRowGrid(table.getColumns(), topLeftCornerX, topLeftCornerY, rowHeight);
         }
 
-        float withOverlapContentWidth = contentWidth + nextColumn.getWidth();
-        List<String> lines = splitTextInLines(rowContent, withOverlapContentWidth, rowFont, fontSize);
-
-        float lastLineWidth = calculateWidth(lines.get(lines.size() - 1), rowFont, fontSize);
-        float nextColumnContentWidth = calculateWidth(nextColumnContent, rowFont, fontSize);
-        if (withOverlapContentWidth < (lastLineWidth + nextColumnContentWidth)) {
-            // add a new line in order to avoid the overlap
-            lines.add("");
-        }
+        // draw row content
+        drawRowContent(table, getCurrentFont(), layout, true);
 
-        return lines.toArray(new String[0]);
-    }
+        // go on the next line
+        setCurrentPosition(topLeftCornerX, topLeftCornerY - rowHeight);
+        endTiming(Phase.PAINT, start);
+        count(Counter.ROWS, 1);
+        count(Counter.CELLS, layout.getNumberOfCells());
 
-    private boolean isLastColumn(Table table, int cellNumber) {
-        return table.getColumns().size() == cellNumber + 1;
     }
 
     /**
      * Draw content for all the cells in the row
      *
-     * @param cellsContent matrix of lines for the table row. The first dimension is the column number and the second
-     *                     dimension is the line number in the row cell
+     * All the lines of the row are written in one text object, each line is positioned relative to the previous one
+     * and the font is set only when it changes.
+     *
+     * @param layout lines of each cell of the table row
      */
-    private void drawRowContent(Table table, PDFont rowFont, String[][] cellsContent,
-                                float lineHeight, float rowHeight, boolean checkColumnAlignment) throws IOException {
+    private void drawRowContent(Table table, PDFont rowFont, RowLayout layout, boolean checkColumnAlignment)
+            throws IOException {
+        float lineHeight = layout.getLineHeight();
+        float rowHeight = layout.getHeight();
         float rowY = getCurrentPositionY();
-        for (int cellNumber = 0; cellNumber < cellsContent.length; cellNumber++) {
+        // start of the previous line in the text object
+        float textLineX = 0;
+        float textLineY = 0;
+        getCurrentPageContentStream().beginText();
+        for (int cellNumber = 0; cellNumber < layout.getNumberOfCells(); cellNumber++) {
             TableColumn currentColumn = table.getColumns().get(cellNumber);
             // column font have priority
             PDFont cellFont = table.getColumns().get(cellNumber).getFont() != null
                     ? table.getColumns().get(cellNumber).getFont() : rowFont;
 
-            int numberOfLinesInCell = cellsContent[cellNumber].length;
+            String cellText = layout.getCellText(cellNumber);
+            int numberOfLinesInCell = layout.getLineCount(cellNumber);
             float contentStartY = calculateRowContentStartY(rowY, currentColumn, table.getCellInsidePadding(),
                     numberOfLinesInCell, lineHeight, rowHeight, checkColumnAlignment);
             setCurrentPosition(getCurrentPositionX(), contentStartY);
 
             for (int cellLineNumber = 0; cellLineNumber < numberOfLinesInCell; cellLineNumber++) {
-                String line = cellsContent[cellNumber][cellLineNumber];
-                float lineWidth = calculateWidth(line, cellFont, getCurrentFontSize());
                 setCurrentPosition(getCurrentPositionX(),
                         getCurrentPositionY() - lineHeight);
+                int lineStart = layout.getLineStart(cellNumber, cellLineNumber);
+                int lineEnd = layout.getLineEnd(cellNumber, cellLineNumber);
+                if (lineStart == lineEnd) {
+                    // nothing to draw
+                    continue;
+                }
+
+                float lineWidth = calculateWidth(cellText, lineStart, lineEnd, cellFont,
+                        getCurrentFontSize());
                 float contentStartX = calculateRowContentStartX(getCurrentPositionX(), currentColumn,
                         lineWidth, table.getCellInsidePadding(), checkColumnAlignment);
 
                 // draw the line
-                getCurrentPageContentStream().beginText();
-                getCurrentPageContentStream().moveTextPositionByAmount(contentStartX,
-                        getCurrentPositionY());
-                getCurrentPageContentStream().setFont(cellFont, getCurrentFontSize());
-                getCurrentPageContentStream().drawString(line);
-                getCurrentPageContentStream().endText();
-
+                setContentStreamFont(cellFont, getCurrentFontSize());
+                getCurrentPageContentStream().moveTextPositionByAmount(contentStartX - textLineX,
+                        getCurrentPositionY() - textLineY);
+                drawString(layout.getLine(cellNumber, cellLineNumber));
+                textLineX = contentStartX;
+                textLineY = getCurrentPositionY();
             }
             // got the next cell
             float xIncrease = table.getColumns().get(cellNumber).getWidth();
             setCurrentPosition(getCurrentPositionX() + xIncrease, rowY);
         }
+        getCurrentPageContentStream().endText();
     }
 
     /**
@@ -494,72 +1316,17 @@ public class PageablePdf extends PDDocument {
     }
 
     /**
-     * Split the text at space (" ") on a list of lines base on maxWidth.
-     *
-     * TODO support other word delimiter beside space (e.g. tab)
-     *
-     * @throws IOException If there is an error getting the width information.
-     */
-    private List<String> splitTextInLines(String text, float maxWidth, PDFont font, float fontSize)
-            throws IOException {
-        if (text == null) {
-            return Collections.singletonList("");
-        }
-
-        float stringWidth = calculateWidth(text, font, fontSize);
-
-        if (stringWidth <= maxWidth) {
-            return new ArrayList<>(Arrays.asList(text));
-        }
-
-        List<String> lines = new ArrayList<>();
-        String[] words = text.split(" ");
-        float spaceWidth = calculateWidth(" ", font, fontSize);
-        float lineWidth = 0;
-        StringBuilder lineBuilder = new StringBuilder();
-        for (String word : words) {
-            float wordWidth = calculateWidth(word, font, fontSize);
-            if (lineWidth + wordWidth <= maxWidth) {
-                lineBuilder.append(" ");
-                lineBuilder.append(word);
-                lineWidth += spaceWidth + wordWidth;
-            } else {
-                // add one row
-                if (lineWidth == 0) {
-                    // this is the first word on the line
-                    lines.add(word);
-                } else {
-                    lines.add(lineBuilder.toString().trim());
-                    lineBuilder = new StringBuilder();
-                    lineBuilder.append(word);
-                    lineWidth = wordWidth;
-                }
-
-            }
-        }
-
-        if (lineBuilder.length() > 0) {
-            lines.add(lineBuilder.toString().trim());
-        }
-
-        return lines;
-    }
-
-    /**
-     * Draw column background for one row or headers.
+     * Draw column background for one row or headers. The backgrounds are collected and drawn when the page is
+     * finished.
      */
     private void drawColumnBackground(List<TableColumn> columns, float rowTopLeftX,
-                                      float rowTopLefY, float rowHeight) throws IOException {
+                                      float rowTopLefY, float rowHeight) {
         // draw bg color
         float cellTopLeftX = rowTopLeftX;
         for (TableColumn column : columns) {
             if (column.getBackgroundColor() != null) {
-
-                getCurrentPageContentStream().setNonStrokingColor(column.getBackgroundColor());
-                getCurrentPageContentStream().fillRect(cellTopLeftX, rowTopLefY - rowHeight,
+                backgroundBuilder.addRectangle(column.getBackgroundColor(), cellTopLeftX, rowTopLefY,
                         column.getWidth(), rowHeight);
-                getCurrentPageContentStream().setNonStrokingColor(Color.BLACK);
-
             }
             cellTopLeftX += column.getWidth();
         }
@@ -567,26 +1334,25 @@ public class PageablePdf extends PDDocument {
 
     /**
      *
-     * Draw grid for a row table.
+     * Draw grid for a row table. The lines are collected and drawn when the page is finished.
      */
     private void drawRowGrid(List<TableColumn> columns, float topLeftCornerX,
-                             float topLeftCornerY, float rowHeight) throws IOException {
+                             float topLeftCornerY, float rowHeight) {
         float rowTopLeftCornerX = topLeftCornerX;
+        float rowBottomY = topLeftCornerY - rowHeight;
         boolean previousColumnDrawGrid = false;
         for (TableColumn column : columns) {
             boolean currentDrawGrid = !column.isHideGrid();
             if (currentDrawGrid || previousColumnDrawGrid) {
                 // left line
-                getCurrentPageContentStream().drawLine(rowTopLeftCornerX, topLeftCornerY, rowTopLeftCornerX,
-                        topLeftCornerY - rowHeight);
+                gridBuilder.addVerticalLine(rowTopLeftCornerX, topLeftCornerY, rowBottomY);
             }
             if (currentDrawGrid) {
                 // top line
-                getCurrentPageContentStream().drawLine(rowTopLeftCornerX, topLeftCornerY,
-                        rowTopLeftCornerX + column.getWidth(), topLeftCornerY);
+                gridBuilder.addHorizontalLine(topLeftCornerY, rowTopLeftCornerX,
+                        rowTopLeftCornerX + column.getWidth());
                 // bottom line
-                getCurrentPageContentStream().drawLine(rowTopLeftCornerX, topLeftCornerY - rowHeight,
-                        rowTopLeftCornerX + column.getWidth(), topLeftCornerY - rowHeight);
+                gridBuilder.addHorizontalLine(rowBottomY, rowTopLeftCornerX, rowTopLeftCornerX + column.getWidth());
             }
             // next
             rowTopLeftCornerX += column.getWidth();
@@ -594,8 +1360,7 @@ public class PageablePdf extends PDDocument {
         }
         if (previousColumnDrawGrid) {
             // last right line
-            getCurrentPageContentStream().drawLine(rowTopLeftCornerX, topLeftCornerY, rowTopLeftCornerX,
-                    topLeftCornerY - rowHeight);
+            gridBuilder.addVerticalLine(rowTopLeftCornerX, topLeftCornerY, rowBottomY);
         }
 
     }
@@ -622,7 +1387,89 @@ public class PageablePdf extends PDDocument {
      * @throws IOException If there is an error getting the width information.
      */
     public float calculateWidth(String string, PDFont font, float aFontSize) throws IOException {
-        return font.getStringWidth(string) / FONT_FACTOR * aFontSize;
+        return getGlyphWidthCache(font).getStringWidth(string) / FONT_FACTOR * aFontSize;
+    }
+
+    /**
+     * Calculate necessary with for a part of the text using specified font and size.
+     *
+     * @param text the text
+     * @param start index of the first character (inclusive)
+     * @param end index of the last character (exclusive)
+     * @param font font use to write the text
+     * @param aFontSize font size
+     * @return the width of the text between start and end
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float calculateWidth(CharSequence text, int start, int end, PDFont font, float aFontSize)
+            throws IOException {
+        return getGlyphWidthCache(font).getStringWidth(text, start, end) / FONT_FACTOR * aFontSize;
+    }
+
+    /*
+     * Collect the codes drawn with the font, its program is subset when the document is closed.
+     */
+    void addFontSubset(FontSubset fontSubset) {
+        fontSubsets.put(fontSubset.getFont(), fontSubset);
+    }
+
+    /*
+     * Embed the whole programs of the fonts waiting to be subset. The fonts of a prototype are captured in the static
+     * layers of its template and used by the documents created from it, which draw other glyphs.
+     */
+    void embedWholeFonts() throws IOException {
+        for (FontSubset fontSubset : fontSubsets.values()) {
+            fontSubset.writeWholeProgram(this);
+        }
+        fontSubsets.clear();
+        contentStreamFontSubset = null;
+    }
+
+    /**
+     * Use preloaded font metrics for the width measurements with their font. The metrics can be shared between
+     * documents.
+     *
+     * @param fontMetrics the font metrics
+     */
+    public void addFontMetrics(FontMetrics fontMetrics) {
+        this.fontMetrics.put(fontMetrics.getFont(), fontMetrics);
+        glyphWidthCaches.put(fontMetrics.getFont(), new GlyphWidthCache(fontMetrics));
+    }
+
+    /**
+     * Get the font metrics for a font, they are loaded on the first call.
+     *
+     * @param font the font
+     * @return the font metrics
+     * @throws IOException If there is an error getting the width information.
+     */
+    public FontMetrics getFontMetrics(PDFont font) throws IOException {
+        FontMetrics metrics = fontMetrics.get(font);
+        if (metrics == null) {
+            metrics = fontRegistry.findFontMetrics(font);
+            if (metrics == null) {
+                metrics = new FontMetrics(font);
+            }
+            fontMetrics.put(font, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the glyph width cache for a font. All the width measurements of this document are going through it.
+     *
+     * @param font the font
+     * @return the cache for the font
+     */
+    public GlyphWidthCache getGlyphWidthCache(PDFont font) {
+        GlyphWidthCache glyphWidthCache = glyphWidthCaches.get(font);
+        if (glyphWidthCache == null) {
+            // the widths of the registered fonts are already loaded
+            FontMetrics metrics = fontRegistry.findFontMetrics(font);
+            glyphWidthCache = metrics != null ? new GlyphWidthCache(metrics) : new GlyphWidthCache(font);
+            glyphWidthCaches.put(font, glyphWidthCache);
+        }
+        return glyphWidthCache;
     }
 
     /**
@@ -643,22 +1490,127 @@ public class PageablePdf extends PDDocument {
      */
     public void closeDocument() throws IOException {
         closeCurrentPageContentStream();
+        long start = startTiming();
         drawHeaderAndFooter();
+        endTiming(Phase.HEADER_FOOTER, start);
+
+        if (!fontSubsets.isEmpty()) {
+            start = startTiming();
+            for (FontSubset fontSubset : fontSubsets.values()) {
+                fontSubset.writeSubset();
+            }
+            fontSubsets.clear();
+            endTiming(Phase.SUBSET_FONTS, start);
+        }
+
+        if (compressContent) {
+            start = startTiming();
+            long bytes = new ContentCompressor(compressionLevel, compressionPool).compress(this,
+                    getDocumentCatalog().getAllPages());
+            endTiming(Phase.COMPRESS, start);
+            count(Counter.COMPRESSED_BYTES, bytes);
+        }
+    }
+
+    /**
+     * Save the document, the time and the number of bytes are reported to the metrics listener.
+     *
+     * @param output The stream to write to.
+     * @throws IOException If there is an error writing the document.
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    @Override
+    public void save(OutputStream output) throws IOException, COSVisitorException {
+        if (!metricsEnabled) {
+            super.save(output);
+            return;
+        }
+
+        long start = startTiming();
+        CountingOutputStream countingOutput = new CountingOutputStream(output);
+        super.save(countingOutput);
+        endTiming(Phase.SAVE, start);
+        count(Counter.BYTES_WRITTEN, countingOutput.getCount());
     }
 
     /**
      * Draw header and footer on each page. This should be called before closing saving the document.
      *
+     * The header and the footer lines are the same on all the pages, so they are drawn only once in a form which is
+     * referenced from each page. Only the page number is drawn separately on each page. For subclasses which
+     * override {@link #drawPageFooter(PDPageContentStream, int)} the header and the footer are drawn on each page.
+     *
      * @throws IOException If the underlying stream has a problem being written to.
      */
     protected void drawHeaderAndFooter() throws IOException {
-        for (int i = 0; i < getDocumentCatalog().getAllPages().size(); i++) {
-            PDPage page = (PDPage) getDocumentCatalog().getAllPages().get(i);
+        // PDFBox builds a new list of pages on every call, so we take it only once
+        List<?> pages = getDocumentCatalog().getAllPages();
+        if (isPageFooterOverridden()) {
+            for (int i = 0; i < pages.size(); i++) {
+                try (PDPageContentStream contentStream =
+                             new PDPageContentStream(this, (PDPage) pages.get(i), true, true, true)) {
+                    drawPageHeader(contentStream);
+                    drawPageFooter(contentStream, i + 1);
+                }
+            }
+            return;
+        }
+
+        PDXObjectForm headerAndFooter = template != null ? template.getHeaderAndFooter().createForm(this)
+                : createHeaderAndFooterForm();
+        float pageNumberY = getPageNumberY();
+        for (int i = 0; i < pages.size(); i++) {
+            PDPage page = (PDPage) pages.get(i);
             try (PDPageContentStream contentStream = new PDPageContentStream(this, page, true, true, true)) {
-                drawPageHeader(contentStream);
-                drawPageFooter(contentStream, i + 1);
+                contentStream.drawXObject(headerAndFooter, 0, 0, 1, 1);
+                if (includePageNumber) {
+                    drawPageNumber(contentStream, i + 1, pageNumberY);
+                }
+            }
+        }
+    }
+
+    /*
+     * Subclasses written before the shared footer form override drawPageFooter(PDPageContentStream, int), which is
+     * called for each page.
+     */
+    private boolean isPageFooterOverridden() {
+        for (Class<?> type = getClass(); type != PageablePdf.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod("drawPageFooter", PDPageContentStream.class, int.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not overridden in this class
             }
         }
+        return false;
+    }
+
+    /*
+     * The page number is drawn under the footer lines.
+     */
+    private float getPageNumberY() {
+        return footerBottomPadding + calculateHeight(footerFont, footerFontSize);
+    }
+
+    /*
+     * Draw the header and the footer lines in a form having the size of the page.
+     */
+    private PDXObjectForm createHeaderAndFooterForm() throws IOException {
+        PDPage formPage = createHeaderAndFooterPage();
+        PDXObjectForm form = new PDXObjectForm(formPage.getContents());
+        form.setResources(formPage.findResources());
+        form.setBBox(formPage.getMediaBox());
+        return form;
+    }
+
+    private PDPage createHeaderAndFooterPage() throws IOException {
+        PDPage formPage = new PDPage(new PDRectangle(getPageWidth(), getPageHeight()));
+        try (PDPageContentStream formContentStream = new PDPageContentStream(this, formPage, false, true)) {
+            drawPageHeader(formContentStream);
+            drawPageFooter(formContentStream);
+        }
+        return formPage;
     }
 
     /**
@@ -671,8 +1623,10 @@ public class PageablePdf extends PDDocument {
         // do nothing
     }
 
-    protected void drawPageFooter(PDPageContentStream pageContentStream, int pageNumber)
-            throws IOException {
+    /**
+     * Draw the footer lines, the page number is drawn separately by {@link #drawPageNumber}.
+     */
+    protected void drawPageFooter(PDPageContentStream pageContentStream) throws IOException {
 
         float lineHeight = calculateHeight(footerFont, footerFontSize);
         float lineY = lineHeight * getFooterLines().size() + footerBottomPadding;
@@ -686,24 +1640,38 @@ public class PageablePdf extends PDDocument {
             pageContentStream.beginText();
             pageContentStream.setFont(footerFont, footerFontSize);
             pageContentStream.moveTextPositionByAmount((getPageWidth() - lineWidth) / 2, lineY);
+            addUsedText(footerFont, line);
             pageContentStream.drawString(line);
             pageContentStream.endText();
 
             lineY = lineY - lineHeight;
         }
+    }
 
+    /**
+     * Draw the footer lines and the page number on a page.
+     *
+     * @deprecated The footer lines are drawn once for all the pages by {@link #drawPageFooter(PDPageContentStream)}
+     * and the page number by {@link #drawPageNumber}. This method is called for each page, instead of them, only if
+     * a subclass overrides it.
+     */
+    @Deprecated
+    protected void drawPageFooter(PDPageContentStream pageContentStream, int pageNumber) throws IOException {
+        drawPageFooter(pageContentStream);
         if (includePageNumber) {
-            drawPageNumber(pageContentStream, pageNumber, lineY);
+            drawPageNumber(pageContentStream, pageNumber, getPageNumberY());
         }
     }
 
-    protected void drawPageNumber(PDPageContentStream pageContentStream, int pageNumber, float lineY) throws IOException {
-        String pageNumberMessage =
-                Integer.toString(pageNumber) + " / " + this.getDocumentCatalog().getAllPages().size();
+    protected void drawPageNumber(PDPageContentStream pageContentStream, int pageNumber, float lineY)
+            throws IOException {
+        // the number of pages is kept by the page tree, it is not counted
+        String pageNumberMessage = Integer.toString(pageNumber) + " / " + getNumberOfPages();
         float lineWidth = calculateWidth(pageNumberMessage, footerFont, footerFontSize);
         pageContentStream.beginText();
         pageContentStream.setFont(footerFont, footerFontSize);
         pageContentStream.moveTextPositionByAmount((getPageWidth() - lineWidth) / 2, lineY);
+        addUsedText(footerFont, pageNumberMessage);
         pageContentStream.drawString(pageNumberMessage);
         pageContentStream.endText();
     }
@@ -881,6 +1849,151 @@ public class PageablePdf extends PDDocument {
         this.footerFont = footerFont;
     }
 
+    public ForkJoinPool getLayoutPool() {
+        return layoutPool;
+    }
+
+    /**
+     * Lay out the table rows in parallel on the pool, the rows are still drawn on the calling thread.
+     * By default (null) the rows are laid out on the calling thread.
+     *
+     * @param layoutPool the pool used to lay out the rows
+     */
+    public void setLayoutPool(ForkJoinPool layoutPool) {
+        this.layoutPool = layoutPool;
+    }
+
+    public FontRegistry getFontRegistry() {
+        return fontRegistry;
+    }
+
+    /**
+     * The metrics of the fonts registered here are shared instead of loaded by the document. This should be set
+     * before drawing. By default the registry of the process is used.
+     *
+     * @param fontRegistry the font registry
+     */
+    public void setFontRegistry(FontRegistry fontRegistry) {
+        this.fontRegistry = fontRegistry;
+    }
+
+    public WrappedCellCache getWrappedCellCache() {
+        return rowLayouter.getWrappedCellCache();
+    }
+
+    /**
+     * Cache the lines of the wrapped cells, so the values which repeat in the table are measured only once.
+     * The cache is used for the rows laid out on the calling thread, not for the rows laid out on a pool.
+     * By default (null) every cell is wrapped.
+     *
+     * @param wrappedCellCache the cache
+     */
+    public void setWrappedCellCache(WrappedCellCache wrappedCellCache) {
+        rowLayouter.setWrappedCellCache(wrappedCellCache);
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Report the time of each phase and the counts of rows, cells, pages, operators and bytes to the listener.
+     * By default nothing is measured.
+     *
+     * @param metricsListener the listener, {@link MetricsListener#NO_OP} (or null) to disable the metrics
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener != null ? metricsListener : MetricsListener.NO_OP;
+        this.metricsEnabled = this.metricsListener != MetricsListener.NO_OP;
+    }
+
+    public ForkJoinPool getPagePool() {
+        return pagePool;
+    }
+
+    /**
+     * Draw the pages of the tables in parallel on the pool. The rows are laid out and paginated first, then the
+     * content of the complete pages is generated in parallel and the pages are added to the document in order.
+     * By default (null) the pages are drawn on the calling thread.
+     *
+     * @param pagePool the pool used to lay out the rows and to draw the pages
+     */
+    public void setPagePool(ForkJoinPool pagePool) {
+        this.pagePool = pagePool;
+    }
+
+    public int getLayoutChunkSize() {
+        return layoutChunkSize;
+    }
+
+    /**
+     * @param layoutChunkSize number of rows laid out in parallel before drawing them
+     */
+    public void setLayoutChunkSize(int layoutChunkSize) {
+        this.layoutChunkSize = layoutChunkSize;
+    }
+
+    public boolean isCompressContent() {
+        return compressContent;
+    }
+
+    /**
+     * Join the content streams of each page and compress them, with the forms used by the pages, when the document
+     * is closed. By default the content streams are compressed one by one while the document is saved.
+     *
+     * @param compressContent true to compress the content when the document is closed
+     */
+    public void setCompressContent(boolean compressContent) {
+        this.compressContent = compressContent;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel Flate level used when the content is compressed at close, from
+     *                         {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     *                         {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION)
+                && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public ForkJoinPool getCompressionPool() {
+        return compressionPool;
+    }
+
+    /**
+     * Compress the content of the pages in parallel on the pool when the content is compressed at close.
+     * By default (null) the content is compressed on the calling thread.
+     *
+     * @param compressionPool the pool used to compress the content
+     */
+    public void setCompressionPool(ForkJoinPool compressionPool) {
+        this.compressionPool = compressionPool;
+    }
+
+    public boolean isSubsetFonts() {
+        return subsetFonts;
+    }
+
+    /**
+     * Embed only the glyphs drawn with the TrueType fonts created from the {@link FontRegistry}. The codes drawn with
+     * each font are collected while the document is drawn and the font programs are written when the document is
+     * closed, so {@link #closeDocument()} has to be called before saving. This should be set before creating the
+     * fonts. By default the fonts are embedded whole.
+     *
+     * @param subsetFonts true to embed subsets of the fonts
+     */
+    public void setSubsetFonts(boolean subsetFonts) {
+        this.subsetFonts = subsetFonts;
+    }
+
     public boolean isIncludePageNumber() {
         return includePageNumber;
     }
@@ -888,4 +2001,245 @@ public class PageablePdf extends PDDocument {
     public void setIncludePageNumber(boolean includePageNumber) {
         this.includePageNumber = includePageNumber;
     }
+
+    /*
+     * Lay out a range of rows of a chunk, the range is split until it is small enough.
+     */
+    private static class RowLayoutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int ROWS_PER_TASK = 64;
+
+        private final Table table;
+        private final String[][] rows;
+        private final RowLayout[] layouts;
+        private final int start;
+        private final int end;
+        private final PDFont rowFont;
+        private final float fontSize;
+        private final float lineHeight;
+        private final Map<PDFont, FontMetrics> fontMetrics;
+
+        RowLayoutTask(Table table, String[][] rows, RowLayout[] layouts, int start, int end, PDFont rowFont,
+                      float fontSize, float lineHeight, Map<PDFont, FontMetrics> fontMetrics) {
+            this.table = table;
+            this.rows = rows;
+            this.layouts = layouts;
+            this.start = start;
+            this.end = end;
+            this.rowFont = rowFont;
+            this.fontSize = fontSize;
+            this.lineHeight = lineHeight;
+            this.fontMetrics = fontMetrics;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > ROWS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RowLayoutTask(table, rows, layouts, start, middle, rowFont, fontSize, lineHeight,
+                                fontMetrics),
+                        new RowLayoutTask(table, rows, layouts, middle, end, rowFont, fontSize, lineHeight,
+                                fontMetrics));
+                return;
+            }
+
+            RowLayouter layouter = new RowLayouter(fontMetrics);
+            try {
+                for (int i = start; i < end; i++) {
+                    layouter.layoutRow(table, rows[i], rowFont, fontSize, lineHeight, layouts[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /*
+     * Rows of a page which is not drawn yet.
+     */
+    private static class PageRows {
+        private final float topY;
+        private float bottomY;
+        private final List<RowLayout> rows = new ArrayList<>();
+
+        PageRows(float topY) {
+            this.topY = topY;
+            this.bottomY = topY;
+        }
+
+        void addRow(RowLayout row) {
+            rows.add(row);
+            bottomY = bottomY - row.getHeight();
+        }
+
+        float getTopY() {
+            return topY;
+        }
+
+        float getBottomY() {
+            return bottomY;
+        }
+
+        List<RowLayout> getRows() {
+            return rows;
+        }
+    }
+
+    /*
+     * Content of a page drawn in a separate document: the resources and the encoded content streams.
+     */
+    private static class PaintedPage {
+        private final MetricsRecorder metrics;
+        private final Collection<FontSubset> fontSubsets;
+        private final COSBase resources;
+        private final List<COSBase> filters = new ArrayList<>();
+        private final List<byte[]> contents = new ArrayList<>();
+
+        PaintedPage(PDPage page, MetricsRecorder metrics, Collection<FontSubset> fontSubsets) throws IOException {
+            this.metrics = metrics;
+            this.fontSubsets = fontSubsets;
+            resources = page.getCOSDictionary().getDictionaryObject(COSName.RESOURCES);
+            COSBase pageContents = page.getCOSDictionary().getDictionaryObject(COSName.CONTENTS);
+            if (pageContents instanceof COSArray) {
+                for (COSBase content : (COSArray) pageContents) {
+                    addContent((COSStream) (content instanceof COSObject ? ((COSObject) content).getObject()
+                            : content));
+                }
+            } else {
+                addContent((COSStream) pageContents);
+            }
+        }
+
+        /*
+         * The content is encoded here, so the compression runs in parallel too.
+         */
+        private void addContent(COSStream stream) throws IOException {
+            filters.add(stream.getItem(COSName.FILTER));
+            try (InputStream input = stream.getFilteredStream()) {
+                contents.add(IOUtils.toByteArray(input));
+            }
+        }
+
+        MetricsRecorder getMetrics() {
+            return metrics;
+        }
+
+        /*
+         * @return the codes drawn on the page with the subset fonts
+         */
+        Collection<FontSubset> getFontSubsets() {
+            return fontSubsets;
+        }
+
+        /*
+         * Create the page in the target document, the content streams are copied to its storage.
+         */
+        PDPage createPage(PageablePdf document) throws IOException {
+            PDPage page = new PDPage(new PDRectangle(document.getPageWidth(), document.getPageHeight()));
+            page.getCOSDictionary().setItem(COSName.RESOURCES, resources);
+
+            COSArray pageContents = new COSArray();
+            for (int i = 0; i < contents.size(); i++) {
+                COSStream stream = document.createStream();
+                stream.setItem(COSName.FILTER, filters.get(i));
+                try (OutputStream output = stream.createFilteredStream()) {
+                    output.write(contents.get(i));
+                }
+                pageContents.add(stream);
+            }
+            page.getCOSDictionary().setItem(COSName.CONTENTS,
+                    pageContents.size() == 1 ? pageContents.get(0) : pageContents);
+            return page;
+        }
+    }
+
+    /*
+     * Draw a range of pages, each leaf task draws its pages in its own document.
+     */
+    private static class PagePaintTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Table table;
+        private final List<PageRows> pages;
+        private final PaintedPage[] paintedPages;
+        private final int start;
+        private final int end;
+        private final float tableX;
+        private final PDFont rowFont;
+        private final float fontSize;
+        private final float pageWidth;
+        private final float pageHeight;
+        private final Map<PDFont, FontMetrics> fontMetrics;
+        private final Collection<FontSubset> fontSubsets;
+        private final PDXObjectForm repeatedHeader;
+        private final boolean metricsEnabled;
+
+        PagePaintTask(Table table, List<PageRows> pages, PaintedPage[] paintedPages, int start, int end,
+                      float tableX, PDFont rowFont, float fontSize, float pageWidth, float pageHeight,
+                      Map<PDFont, FontMetrics> fontMetrics, Collection<FontSubset> fontSubsets,
+                      PDXObjectForm repeatedHeader, boolean metricsEnabled) {
+            this.table = table;
+            this.pages = pages;
+            this.paintedPages = paintedPages;
+            this.start = start;
+            this.end = end;
+            this.tableX = tableX;
+            this.rowFont = rowFont;
+            this.fontSize = fontSize;
+            this.pageWidth = pageWidth;
+            this.pageHeight = pageHeight;
+            this.fontMetrics = fontMetrics;
+            this.fontSubsets = fontSubsets;
+            this.repeatedHeader = repeatedHeader;
+            this.metricsEnabled = metricsEnabled;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(createSubtask(start, middle), createSubtask(middle, end));
+                return;
+            }
+
+            try {
+                paintedPages[start] = paint(pages.get(start));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private PagePaintTask createSubtask(int subtaskStart, int subtaskEnd) {
+            return new PagePaintTask(table, pages, paintedPages, subtaskStart, subtaskEnd, tableX, rowFont, fontSize,
+                    pageWidth, pageHeight, fontMetrics, fontSubsets, repeatedHeader, metricsEnabled);
+        }
+
+        private PaintedPage paint(PageRows page) throws IOException {
+            PageablePdf pdf = new PageablePdf(pageWidth, pageHeight);
+            // the page is drawn on another thread, so the metrics are recorded and reported later
+            MetricsRecorder pageMetrics = metricsEnabled ? new MetricsRecorder() : null;
+            pdf.setMetricsListener(pageMetrics);
+            try {
+                for (FontMetrics metrics : fontMetrics.values()) {
+                    pdf.addFontMetrics(metrics);
+                }
+                for (FontSubset fontSubset : fontSubsets) {
+                    pdf.addFontSubset(fontSubset.createPageSubset());
+                }
+                pdf.setCurrentFont(rowFont);
+                pdf.setCurrentFontSize(fontSize);
+                pdf.setCurrentPosition(tableX, page.getTopY());
+                // the form is only read, it is shared by the pages drawn in parallel
+                pdf.repeatedHeader = repeatedHeader;
+                pdf.drawRepeatedHeader();
+                for (RowLayout row : page.getRows()) {
+                    pdf.drawRowAtCurrentPosition(table, row);
+                }
+                pdf.finishCurrentPage();
+                return new PaintedPage(pdf.getCurrentPage(), pageMetrics, pdf.fontSubsets.values());
+            } finally {
+                pdf.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of the internal state of {@link PageablePdf}s shared by the threads which generate documents.
+ *
+ * A released document is closed and its stream storage, glyph width caches, layout arrays and drawing buffers are kept
+ * for the next acquired document, so under sustained load the documents start with warm caches and buffers which
+ * already grew to the needed size. The PDFBox objects of a document cannot be reset, so every acquired document has
+ * new ones on top of the reused storage. The state of a document which grew over the retained capacity is dropped
+ * when released, so one huge document doesn't keep its memory forever.
+ *
+ * @author Bogdan Aldea
+ */
+public class PageablePdfPool {
+    private final BlockingQueue<DocumentScratch> scratches;
+    private final long maxRetainedCapacity;
+
+    /**
+     * @param maxPooledDocuments maximum number of released documents whose state is kept in the pool
+     * @param maxRetainedCapacity documents whose stream storage is bigger than this (in bytes) are not kept
+     */
+    public PageablePdfPool(int maxPooledDocuments, long maxRetainedCapacity) {
+        this.scratches = new ArrayBlockingQueue<>(maxPooledDocuments);
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * @param pageWidth page with in points
+     * @param pageHeight page height in points
+     * @return a new document with default settings, reusing the state of a released document if there is one
+     */
+    public PageablePdf acquire(float pageWidth, float pageHeight) {
+        return new PageablePdf(pageWidth, pageHeight, pollScratch());
+    }
+
+    /**
+     * @param pageWidth page with in points
+     * @param pageHeight page height in points
+     * @param scratchDirectory directory for the scratch file, if null the default temporary directory is used
+     * @return a new document which keeps the content of the pages in a scratch file
+     * @throws IOException If the scratch file cannot be created.
+     */
+    public PageablePdf acquire(float pageWidth, float pageHeight, File scratchDirectory) throws IOException {
+        return new PageablePdf(pageWidth, pageHeight, scratchDirectory, pollScratch());
+    }
+
+    private DocumentScratch pollScratch() {
+        DocumentScratch scratch = scratches.poll();
+        return scratch != null ? scratch : new DocumentScratch();
+    }
+
+    /**
+     * Close the document and keep its state for the next acquired document. The document cannot be used after that.
+     *
+     * @param document a document acquired from this pool
+     * @throws IOException If there is an error closing the document.
+     */
+    public void release(PageablePdf document) throws IOException {
+        document.close();
+        DocumentScratch scratch = document.detachScratch();
+        if (scratch != null && scratch.getCapacity() <= maxRetainedCapacity) {
+            // if the pool is full the state is dropped
+            scratches.offer(scratch);
+        }
+    }
+
+    /**
+     * @return number of released documents whose state waits in the pool
+     */
+    public int getPooledDocuments() {
+        return scratches.size();
+    }
+}
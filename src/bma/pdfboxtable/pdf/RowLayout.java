@@ -0,0 +1,143 @@
+package bma.pdfboxtable.pdf;
+
+import java.util.Arrays;
+
+/**
+ * Layout of one table row: the lines of each cell and the height of the row.
+ *
+ * The layout is built by {@link RowLayouter} and it is not changed after that, so it can be built on one thread and
+ * drawn on another one. The lines are kept as start and end offsets in the cell text.
+ *
+ * @author Bogdan Aldea
+ */
+public class RowLayout {
+    private String[] cells = new String[0];
+    private int numberOfCells;
+    // index of the first line of each cell, the last entry is the total number of lines
+    private int[] cellFirstLine = new int[1];
+    // start and end offset of each line
+    private int[] lineOffsets = new int[16];
+    private int necessaryLines;
+    private float lineHeight;
+    private float height;
+
+    /*
+     * Start a new layout for the cells. The cells array is not copied.
+     */
+    void reset(String[] newCells, int newNumberOfCells) {
+        cells = newCells;
+        numberOfCells = 0;
+        if (cellFirstLine.length < newNumberOfCells + 1) {
+            cellFirstLine = new int[newNumberOfCells + 1];
+        }
+        cellFirstLine[0] = 0;
+        necessaryLines = 1;
+    }
+
+    /*
+     * Add the lines of the next cell.
+     */
+    void addCell(LineBreaker lines) {
+        int firstLine = cellFirstLine[numberOfCells];
+        int lineCount = lines.getLineCount();
+        int requiredLength = 2 * (firstLine + lineCount);
+        if (lineOffsets.length < requiredLength) {
+            lineOffsets = Arrays.copyOf(lineOffsets, Math.max(requiredLength, 2 * lineOffsets.length));
+        }
+        for (int i = 0; i < lineCount; i++) {
+            lineOffsets[2 * (firstLine + i)] = lines.getLineStart(i);
+            lineOffsets[2 * (firstLine + i) + 1] = lines.getLineEnd(i);
+        }
+        numberOfCells++;
+        cellFirstLine[numberOfCells] = firstLine + lineCount;
+        if (lineCount > necessaryLines) {
+            necessaryLines = lineCount;
+        }
+    }
+
+    /*
+     * Set the height of the row after all the cells were added.
+     */
+    void finish(float newLineHeight, float cellPadding) {
+        lineHeight = newLineHeight;
+        height = (necessaryLines * lineHeight) + (2 * cellPadding);
+    }
+
+    /**
+     * @return number of cells in the row
+     */
+    public int getNumberOfCells() {
+        return numberOfCells;
+    }
+
+    /**
+     * @param cellNumber cell number
+     * @return the text of the cell, never null
+     */
+    public String getCellText(int cellNumber) {
+        String text = cells[cellNumber];
+        return text != null ? text : "";
+    }
+
+    /**
+     * @param cellNumber cell number
+     * @return number of lines in the cell
+     */
+    public int getLineCount(int cellNumber) {
+        return cellFirstLine[cellNumber + 1] - cellFirstLine[cellNumber];
+    }
+
+    /**
+     * @param cellNumber cell number
+     * @param lineNumber line number in the cell
+     * @return offset of the first character of the line in the cell text
+     */
+    public int getLineStart(int cellNumber, int lineNumber) {
+        return lineOffsets[2 * (cellFirstLine[cellNumber] + lineNumber)];
+    }
+
+    /**
+     * @param cellNumber cell number
+     * @param lineNumber line number in the cell
+     * @return offset after the last character of the line in the cell text
+     */
+    public int getLineEnd(int cellNumber, int lineNumber) {
+        return lineOffsets[2 * (cellFirstLine[cellNumber] + lineNumber) + 1];
+    }
+
+    /**
+     * @param cellNumber cell number
+     * @param lineNumber line number in the cell
+     * @return the line content
+     */
+    public String getLine(int cellNumber, int lineNumber) {
+        String text = getCellText(cellNumber);
+        int start = getLineStart(cellNumber, lineNumber);
+        int end = getLineEnd(cellNumber, lineNumber);
+        if (start == 0 && end == text.length()) {
+            return text;
+        }
+        return text.substring(start, end);
+    }
+
+    /**
+     * @return maximum number of lines of a cell, at least one
+     */
+    public int getNecessaryLines() {
+        return necessaryLines;
+    }
+
+    /**
+     * @return height of one line
+     */
+    public float getLineHeight() {
+        return lineHeight;
+    }
+
+    /**
+     * @return height of the row including the cell padding
+     */
+    public float getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,208 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bma.pdfboxtable.table.Table;
+import bma.pdfboxtable.table.TableColumn;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import static bma.pdfboxtable.table.TextAlignment.RIGHT;
+import static bma.pdfboxtable.table.TextVerticalAlignment.BOTTOM;
+
+/**
+ * Measure and wrap the cells of table rows into {@link RowLayout}s.
+ *
+ * The layouter is not thread safe. To lay out rows on more threads each thread should use its own layouter built on
+ * top of shared {@link FontMetrics}.
+ *
+ * @author Bogdan Aldea
+ */
+public class RowLayouter {
+    private static final float FONT_FACTOR = 1000f;
+
+    private final PageablePdf pdf;
+    private final Map<PDFont, FontMetrics> fontMetrics;
+    private final Map<PDFont, GlyphWidthCache> glyphWidthCaches = new HashMap<>();
+    private final LineBreaker lineBreaker = new LineBreaker();
+    private WrappedCellCache wrappedCellCache;
+
+    /**
+     * Layouter which measures the text with the glyph width caches of the document.
+     *
+     * @param pdf the document
+     */
+    public RowLayouter(PageablePdf pdf) {
+        this.pdf = pdf;
+        this.fontMetrics = null;
+    }
+
+    /**
+     * Layouter which measures the text with its own glyph width caches, built on top of shared font metrics.
+     *
+     * @param fontMetrics shared font metrics, it is only read
+     */
+    public RowLayouter(Map<PDFont, FontMetrics> fontMetrics) {
+        this.pdf = null;
+        this.fontMetrics = fontMetrics;
+    }
+
+    /**
+     * Lay out the column headers.
+     *
+     * @param table the table
+     * @param headerFont header font
+     * @param fontSize font size
+     * @param lineHeight height of one line
+     * @param layout the layout to fill
+     * @throws IOException If there is an error getting the width information.
+     */
+    public void layoutHeaders(Table table, PDFont headerFont, float fontSize, float lineHeight, RowLayout layout)
+            throws IOException {
+        List<TableColumn> columns = table.getColumns();
+        String[] headers = new String[columns.size()];
+        for (int cellNumber = 0; cellNumber < headers.length; cellNumber++) {
+            headers[cellNumber] = columns.get(cellNumber).getHeader();
+        }
+
+        layout.reset(headers, headers.length);
+        for (int cellNumber = 0; cellNumber < headers.length; cellNumber++) {
+            float contentWidth = columns.get(cellNumber).getWidth() - (2 * table.getCellInsidePadding());
+            splitTextInLines(headers[cellNumber], contentWidth, headerFont, fontSize);
+            layout.addCell(lineBreaker);
+        }
+        layout.finish(lineHeight, table.getCellInsidePadding());
+    }
+
+    /**
+     * Lay out one row of the table.
+     *
+     * @param table the table
+     * @param row the row content
+     * @param rowFont row font
+     * @param fontSize font size
+     * @param lineHeight height of one line
+     * @param layout the layout to fill
+     * @throws IOException If there is an error getting the width information.
+     */
+    public void layoutRow(Table table, String[] row, PDFont rowFont, float fontSize, float lineHeight,
+                          RowLayout layout) throws IOException {
+        layout.reset(row, row.length);
+        for (int cellNumber = 0; cellNumber < row.length; cellNumber++) {
+            generateRowContentLines(table, rowFont, fontSize, row, cellNumber);
+            layout.addCell(lineBreaker);
+        }
+        layout.finish(lineHeight, table.getCellInsidePadding());
+    }
+
+    /**
+     * This is splitting the row content based on available space on different lines.
+     *
+     * There are some limitation on next column overlap which should be addressed:
+     *  - treat the case when next column vertical alignment is not BOTTOM
+     *  - treat the case when column content will not fit in on line
+     *  - do better space management, if next column alignment is center or right.
+     *  - (optional) make to overlap more than one column
+     *  In all these cases we don't do the overlap
+     *
+     * TODO fix all the above limitations
+     */
+    private void generateRowContentLines(Table table, PDFont rowFont, float fontSize, String[] row, int cellNumber)
+            throws IOException {
+        if (row[cellNumber] == null) {
+            splitTextInLines("", 0, rowFont, fontSize);
+            return;
+        }
+
+        TableColumn column = table.getColumns().get(cellNumber);
+        float contentWidth = column.getWidth() - (2 * table.getCellInsidePadding());
+        String rowContent = row[cellNumber];
+
+        if (!column.isOverlapNextColumn() || isLastColumn(table, cellNumber)) {
+            splitTextInLines(rowContent, contentWidth, rowFont, fontSize);
+            return;
+        }
+
+        TableColumn nextColumn = table.getColumns().get(cellNumber + 1);
+
+        // NOT SUPPORTED YET: other alignment
+        if (nextColumn.getVerticalAlignment() != BOTTOM || nextColumn.getAlignment() != RIGHT) {
+            splitTextInLines(rowContent, contentWidth, rowFont, fontSize);
+            return;
+        }
+
+        float nextColumnContentAvailableWidth = nextColumn.getWidth() - (2 * table.getCellInsidePadding());
+        String nextColumnContent = row[cellNumber + 1];
+        // the next column lines are only counted, so we can use the same line breaker
+        splitTextInLines(nextColumnContent, nextColumnContentAvailableWidth, rowFont, fontSize);
+
+        // NOT SUPPORTED YET: next column require more than one line
+        if (lineBreaker.getLineCount() > 1) {
+            splitTextInLines(rowContent, contentWidth, rowFont, fontSize);
+            return;
+        }
+
+        float withOverlapContentWidth = contentWidth + nextColumn.getWidth();
+        splitTextInLines(rowContent, withOverlapContentWidth, rowFont, fontSize);
+
+        int lastLine = lineBreaker.getLineCount() - 1;
+        float lastLineWidth = getGlyphWidthCache(rowFont).getStringWidth(rowContent,
+                lineBreaker.getLineStart(lastLine), lineBreaker.getLineEnd(lastLine)) / FONT_FACTOR * fontSize;
+        float nextColumnContentWidth = getGlyphWidthCache(rowFont).getStringWidth(nextColumnContent)
+                / FONT_FACTOR * fontSize;
+        if (withOverlapContentWidth < (lastLineWidth + nextColumnContentWidth)) {
+            // add a new line in order to avoid the overlap
+            lineBreaker.addEmptyLine();
+        }
+    }
+
+    private boolean isLastColumn(Table table, int cellNumber) {
+        return table.getColumns().size() == cellNumber + 1;
+    }
+
+    /**
+     * Split the text on lines base on maxWidth. The result is kept in the line breaker.
+     *
+     * @throws IOException If there is an error getting the width information.
+     */
+    private void splitTextInLines(String text, float maxWidth, PDFont font, float fontSize) throws IOException {
+        if (wrappedCellCache == null || text == null || text.isEmpty()) {
+            lineBreaker.breakLines(text, maxWidth, getGlyphWidthCache(font), fontSize);
+            return;
+        }
+
+        int[] lines = wrappedCellCache.get(text, maxWidth, font, fontSize);
+        if (lines != null) {
+            lineBreaker.setLines(text, lines);
+            return;
+        }
+        lineBreaker.breakLines(text, maxWidth, getGlyphWidthCache(font), fontSize);
+        wrappedCellCache.put(text, maxWidth, font, fontSize, lineBreaker.copyLines());
+    }
+
+    public WrappedCellCache getWrappedCellCache() {
+        return wrappedCellCache;
+    }
+
+    /**
+     * @param wrappedCellCache cache of the wrapped cells, null to wrap every cell
+     */
+    public void setWrappedCellCache(WrappedCellCache wrappedCellCache) {
+        this.wrappedCellCache = wrappedCellCache;
+    }
+
+    private GlyphWidthCache getGlyphWidthCache(PDFont font) {
+        if (pdf != null) {
+            return pdf.getGlyphWidthCache(font);
+        }
+
+        GlyphWidthCache glyphWidthCache = glyphWidthCaches.get(font);
+        if (glyphWidthCache == null) {
+            FontMetrics metrics = fontMetrics.get(font);
+            glyphWidthCache = metrics != null ? new GlyphWidthCache(metrics) : new GlyphWidthCache(font);
+            glyphWidthCaches.put(font, glyphWidthCache);
+        }
+        return glyphWidthCache;
+    }
+}
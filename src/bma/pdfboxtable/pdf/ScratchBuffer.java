@@ -0,0 +1,185 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.io.RandomAccessBuffer;
+
+/**
+ * In memory storage of the streams of a document, made of fixed size chunks.
+ *
+ * PDFBox gives each new stream a clone of the storage of the document, so every stream allocates its own buffer. Here
+ * the clones are taken from a list of stream buffers owned by the document storage, and resetting the document
+ * storage makes all of them available again with their chunks, so the next document which uses it writes its streams
+ * without allocating them again.
+ *
+ * @author Bogdan Aldea
+ */
+final class ScratchBuffer extends RandomAccessBuffer {
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    // storage of the document, null for the storage of the document itself
+    private final ScratchBuffer documentBuffer;
+    private final List<ScratchBuffer> streamBuffers;
+    private int streamBuffersInUse;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private long length;
+    private long position;
+
+    /**
+     * Storage of a document.
+     */
+    ScratchBuffer() {
+        this(null);
+    }
+
+    private ScratchBuffer(ScratchBuffer documentBuffer) {
+        this.documentBuffer = documentBuffer;
+        this.streamBuffers = documentBuffer == null ? new ArrayList<>() : null;
+        releaseInheritedChunk();
+    }
+
+    /*
+     * The constructor of RandomAccessBuffer allocates a first chunk, which is never used since all the reads and
+     * writes are overridden. It is dropped, so the pool doesn't keep it without counting it in the capacity.
+     */
+    private void releaseInheritedChunk() {
+        try {
+            super.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Exception while releasing the inherited buffer: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Drop the content of the document storage and of all the stream buffers, the chunks are kept.
+     */
+    void reset() {
+        clear();
+        if (streamBuffers != null) {
+            for (int i = 0; i < streamBuffersInUse; i++) {
+                streamBuffers.get(i).clear();
+            }
+            streamBuffersInUse = 0;
+        }
+    }
+
+    private void clear() {
+        length = 0;
+        position = 0;
+    }
+
+    /*
+     * @return number of bytes allocated by the document storage and its stream buffers
+     */
+    long capacity() {
+        long capacity = (long) chunks.size() * CHUNK_SIZE;
+        if (streamBuffers != null) {
+            for (ScratchBuffer streamBuffer : streamBuffers) {
+                capacity += streamBuffer.capacity();
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * The streams of the document get an empty buffer, as if the empty storage of the document was cloned.
+     *
+     * @return an empty stream buffer
+     */
+    @Override
+    public ScratchBuffer clone() {
+        if (documentBuffer != null) {
+            return documentBuffer.clone();
+        }
+
+        if (streamBuffersInUse == streamBuffers.size()) {
+            streamBuffers.add(new ScratchBuffer(this));
+        }
+        return streamBuffers.get(streamBuffersInUse++);
+    }
+
+    /**
+     * The content is dropped when the document is reset, so the chunks are not released here.
+     */
+    @Override
+    public void close() {
+        // the stream buffers are closed with the document, nothing to do
+    }
+
+    @Override
+    public int read() {
+        if (position >= length) {
+            return -1;
+        }
+        int value = chunks.get((int) (position / CHUNK_SIZE))[(int) (position % CHUNK_SIZE)] & 0xff;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+
+        int remaining = (int) Math.min(len, length - position);
+        int read = 0;
+        while (read < remaining) {
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int count = Math.min(remaining - read, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(chunks.get((int) (position / CHUNK_SIZE)), chunkOffset, b, offset + read, count);
+            position += count;
+            read += count;
+        }
+        return read;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void seek(long newPosition) {
+        position = newPosition;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(position + 1);
+        chunks.get((int) (position / CHUNK_SIZE))[(int) (position % CHUNK_SIZE)] = (byte) b;
+        position++;
+        length = Math.max(length, position);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int len) {
+        ensureCapacity(position + len);
+        int written = 0;
+        while (written < len) {
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int count = Math.min(len - written, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(b, offset + written, chunks.get((int) (position / CHUNK_SIZE)), chunkOffset, count);
+            position += count;
+            written += count;
+        }
+        length = Math.max(length, position);
+    }
+
+    private void ensureCapacity(long requiredCapacity) {
+        while ((long) chunks.size() * CHUNK_SIZE < requiredCapacity) {
+            chunks.add(new byte[CHUNK_SIZE]);
+        }
+    }
+}
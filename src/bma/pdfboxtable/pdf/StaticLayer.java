@@ -0,0 +1,97 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
+
+/**
+ * Content of a page captured once and placed as a form on pages of other documents.
+ *
+ * The content streams of the page are joined and compressed when the layer is captured, and the streams of the
+ * resources (e.g. embedded fonts) are kept encoded, so creating the form only copies bytes. The layer doesn't depend
+ * on the document it was captured from, which can be closed.
+ *
+ * @author Bogdan Aldea
+ */
+final class StaticLayer {
+    private final byte[] encodedContent;
+    private final COSDictionary resources;
+    private final TemplateResources templateResources = new TemplateResources();
+    private final float width;
+    private final float height;
+
+    /*
+     * Capture the content and the resources of a finished page.
+     */
+    StaticLayer(PDPage page) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (OutputStream output = new DeflaterOutputStream(content)) {
+            output.write(joinContents(page));
+        }
+        encodedContent = content.toByteArray();
+
+        COSBase pageResources = page.getCOSDictionary().getDictionaryObject(COSName.RESOURCES);
+        resources = pageResources instanceof COSDictionary ? (COSDictionary) pageResources : new COSDictionary();
+        templateResources.read(resources);
+
+        PDRectangle mediaBox = page.getMediaBox();
+        width = mediaBox.getWidth();
+        height = mediaBox.getHeight();
+    }
+
+    /*
+     * Create a form with the content of the layer in the document. The form has the size of the captured page, so it
+     * is placed with drawXObject(form, 0, 0, 1, 1). The resources already copied to the document by the other layers
+     * of the template (e.g. the same font) are reused.
+     */
+    PDXObjectForm createForm(PageablePdf document) throws IOException {
+        COSStream formStream = document.createStream();
+        formStream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        try (OutputStream output = formStream.createFilteredStream()) {
+            output.write(encodedContent);
+        }
+
+        PDXObjectForm form = new PDXObjectForm(formStream);
+        formStream.setItem(COSName.RESOURCES, templateResources.copy(resources, document));
+        form.setBBox(new PDRectangle(width, height));
+        return form;
+    }
+
+    /*
+     * Join the decoded content streams of a page, a form has only one content stream.
+     */
+    static byte[] joinContents(PDPage page) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        COSBase pageContents = page.getCOSDictionary().getDictionaryObject(COSName.CONTENTS);
+        if (pageContents instanceof COSArray) {
+            for (COSBase pageContent : (COSArray) pageContents) {
+                appendContent(content, pageContent);
+            }
+        } else if (pageContents != null) {
+            appendContent(content, pageContents);
+        }
+        return content.toByteArray();
+    }
+
+    private static void appendContent(ByteArrayOutputStream content, COSBase pageContent) throws IOException {
+        COSStream stream = (COSStream) (pageContent instanceof COSObject ? ((COSObject) pageContent).getObject()
+                : pageContent);
+        try (InputStream input = stream.getUnfilteredStream()) {
+            IOUtils.copy(input, content);
+        }
+        content.write('\n');
+    }
+}
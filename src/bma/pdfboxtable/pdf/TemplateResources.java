@@ -0,0 +1,104 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+
+/**
+ * Resources of a template (e.g. fonts) copied to the documents created from it.
+ *
+ * The streams of the resources are read once and kept encoded, so copying them only copies bytes and the document
+ * they were read from can be closed. Each document keeps the copies it made by original object, so a resource used
+ * by several layers and settings of the template is copied once.
+ *
+ * @author Bogdan Aldea
+ */
+final class TemplateResources {
+    private final Map<COSStream, byte[]> encodedStreams = new IdentityHashMap<>();
+    private final Map<COSBase, Boolean> visited = new IdentityHashMap<>();
+
+    /*
+     * Keep the encoded data of the streams reachable from the object, the document they belong to may be closed
+     * later.
+     */
+    void read(COSBase object) throws IOException {
+        COSBase base = object instanceof COSObject ? ((COSObject) object).getObject() : object;
+        if (base == null || visited.put(base, Boolean.TRUE) != null) {
+            return;
+        }
+
+        if (base instanceof COSStream) {
+            try (InputStream input = ((COSStream) base).getFilteredStream()) {
+                encodedStreams.put((COSStream) base, IOUtils.toByteArray(input));
+            }
+        }
+        if (base instanceof COSDictionary) {
+            for (COSBase value : ((COSDictionary) base).getValues()) {
+                read(value);
+            }
+        } else if (base instanceof COSArray) {
+            for (COSBase item : (COSArray) base) {
+                read(item);
+            }
+        }
+    }
+
+    /*
+     * Dictionaries, arrays and streams are copied, so the documents never share them. The other objects (names,
+     * numbers, strings) are not changed by PDFBox and they are shared. The copies already made in the document are
+     * reused.
+     */
+    COSBase copy(COSBase object, PageablePdf document) throws IOException {
+        return copy(object, document, document.getTemplateResourceCopies());
+    }
+
+    private COSBase copy(COSBase object, PageablePdf document, Map<COSBase, COSBase> copies) throws IOException {
+        COSBase base = object instanceof COSObject ? ((COSObject) object).getObject() : object;
+        COSBase copy = copies.get(base);
+        if (copy != null) {
+            return copy;
+        }
+
+        if (base instanceof COSStream) {
+            COSStream stream = document.createStream();
+            copies.put(base, stream);
+            for (Map.Entry<COSName, COSBase> entry : ((COSStream) base).entrySet()) {
+                // the length is set again when the data is written
+                if (!COSName.LENGTH.equals(entry.getKey())) {
+                    stream.setItem(entry.getKey(), copy(entry.getValue(), document, copies));
+                }
+            }
+            try (OutputStream output = stream.createFilteredStream()) {
+                output.write(encodedStreams.get(base));
+            }
+            return stream;
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = new COSDictionary();
+            copies.put(base, dictionary);
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) base).entrySet()) {
+                dictionary.setItem(entry.getKey(), copy(entry.getValue(), document, copies));
+            }
+            return dictionary;
+        }
+        if (base instanceof COSArray) {
+            COSArray array = new COSArray();
+            copies.put(base, array);
+            for (COSBase item : (COSArray) base) {
+                array.add(copy(item, document, copies));
+            }
+            return array;
+        }
+        return base;
+    }
+}
@@ -0,0 +1,259 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * TrueType font program parsed once, which writes subsets of itself.
+ *
+ * A subset keeps the glyph ids of the font: the glyphs which are not used are left empty in the glyf table, so the
+ * cmap, the horizontal metrics and the widths of the PDF font stay valid without being rebuilt. The tables which are
+ * not used to render a PDF simple font (e.g. kerning, OpenType layout) are dropped and the glyph names are removed
+ * from the post table. The program is only read after it is parsed, so the documents create subsets in parallel.
+ *
+ * @author Bogdan Aldea
+ */
+final class TrueTypeProgram {
+    // tables kept in the subsets, the others are dropped
+    private static final String[] SUBSET_TABLES = {"OS/2", "cmap", "cvt ", "fpgm", "glyf", "head", "hhea", "hmtx",
+            "loca", "maxp", "name", "post", "prep"};
+    private static final int TABLE_DIRECTORY_OFFSET = 12;
+    private static final int TABLE_RECORD_SIZE = 16;
+    private static final int HEAD_CHECKSUM_ADJUSTMENT_OFFSET = 8;
+    private static final int HEAD_INDEX_TO_LOC_FORMAT_OFFSET = 50;
+    private static final int MAXP_NUM_GLYPHS_OFFSET = 4;
+    private static final int POST_HEADER_SIZE = 32;
+    private static final int POST_VERSION_3 = 0x00030000;
+    private static final long CHECKSUM_MAGIC = 0xB1B0AFBAL;
+    private static final long UINT32_MASK = 0xffffffffL;
+    private static final int SHORT_LOCA_LIMIT = 0x20000;
+
+    // composite glyph flags
+    private static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+    private static final int WE_HAVE_A_SCALE = 0x0008;
+    private static final int MORE_COMPONENTS = 0x0020;
+    private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+    private static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+
+    private final byte[] data;
+    private final int sfntVersion;
+    private final Map<String, int[]> tables = new TreeMap<>();
+    private final int[] glyphOffsets;
+    private final int[] codeToGlyph;
+
+    /*
+     * @param data the decoded font program
+     * @param codeToGlyph glyph id of each character code of the PDF font, 0 if the code has no glyph
+     */
+    TrueTypeProgram(byte[] data, int[] codeToGlyph) throws IOException {
+        this.data = data;
+        this.codeToGlyph = codeToGlyph;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        sfntVersion = buffer.getInt(0);
+        int numberOfTables = buffer.getShort(4) & 0xffff;
+        for (int i = 0; i < numberOfTables; i++) {
+            int record = TABLE_DIRECTORY_OFFSET + i * TABLE_RECORD_SIZE;
+            String tag = new String(data, record, 4, "ISO-8859-1");
+            tables.put(tag, new int[]{buffer.getInt(record + 8), buffer.getInt(record + 12)});
+        }
+        if (!tables.containsKey("glyf") || !tables.containsKey("loca") || !tables.containsKey("head")
+                || !tables.containsKey("maxp")) {
+            throw new IOException("The font program has no glyf outlines");
+        }
+
+        int numberOfGlyphs = buffer.getShort(tables.get("maxp")[0] + MAXP_NUM_GLYPHS_OFFSET) & 0xffff;
+        boolean longOffsets = buffer.getShort(tables.get("head")[0] + HEAD_INDEX_TO_LOC_FORMAT_OFFSET) != 0;
+        int locaOffset = tables.get("loca")[0];
+        glyphOffsets = new int[numberOfGlyphs + 1];
+        for (int glyph = 0; glyph <= numberOfGlyphs; glyph++) {
+            glyphOffsets[glyph] = longOffsets ? buffer.getInt(locaOffset + glyph * 4)
+                    : (buffer.getShort(locaOffset + glyph * 2) & 0xffff) * 2;
+        }
+    }
+
+    /*
+     * @return the decoded font program
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /*
+     * @param usedCodes the character codes drawn with the font
+     * @return the font program with the glyphs of the codes
+     */
+    byte[] subset(BitSet usedCodes) throws IOException {
+        BitSet glyphs = findGlyphs(usedCodes);
+
+        // the glyphs keep their ids, the unused ones are empty
+        int glyfOffset = tables.get("glyf")[0];
+        ByteArrayOutputStream glyf = new ByteArrayOutputStream();
+        int numberOfGlyphs = glyphOffsets.length - 1;
+        int[] newOffsets = new int[numberOfGlyphs + 1];
+        for (int glyph = 0; glyph < numberOfGlyphs; glyph++) {
+            newOffsets[glyph] = glyf.size();
+            if (glyphs.get(glyph)) {
+                glyf.write(data, glyfOffset + glyphOffsets[glyph], glyphOffsets[glyph + 1] - glyphOffsets[glyph]);
+                // the short offsets are divided by 2, so the glyphs are kept aligned
+                while (glyf.size() % 4 != 0) {
+                    glyf.write(0);
+                }
+            }
+        }
+        newOffsets[numberOfGlyphs] = glyf.size();
+
+        boolean longOffsets = glyf.size() >= SHORT_LOCA_LIMIT;
+        ByteArrayOutputStream loca = new ByteArrayOutputStream();
+        DataOutputStream locaOutput = new DataOutputStream(loca);
+        for (int offset : newOffsets) {
+            if (longOffsets) {
+                locaOutput.writeInt(offset);
+            } else {
+                locaOutput.writeShort(offset / 2);
+            }
+        }
+
+        Map<String, byte[]> subsetTables = new TreeMap<>();
+        for (String tag : SUBSET_TABLES) {
+            int[] table = tables.get(tag);
+            if (table != null) {
+                byte[] tableData = new byte[table[1]];
+                System.arraycopy(data, table[0], tableData, 0, table[1]);
+                subsetTables.put(tag, tableData);
+            }
+        }
+        subsetTables.put("glyf", glyf.toByteArray());
+        subsetTables.put("loca", loca.toByteArray());
+        ByteBuffer head = ByteBuffer.wrap(subsetTables.get("head"));
+        head.putInt(HEAD_CHECKSUM_ADJUSTMENT_OFFSET, 0);
+        head.putShort(HEAD_INDEX_TO_LOC_FORMAT_OFFSET, (short) (longOffsets ? 1 : 0));
+        byte[] post = subsetTables.get("post");
+        if (post != null && post.length >= POST_HEADER_SIZE) {
+            // version 3 has no glyph names
+            byte[] postHeader = new byte[POST_HEADER_SIZE];
+            System.arraycopy(post, 0, postHeader, 0, POST_HEADER_SIZE);
+            ByteBuffer.wrap(postHeader).putInt(0, POST_VERSION_3);
+            subsetTables.put("post", postHeader);
+        }
+
+        byte[] program = write(subsetTables);
+        int headOffset = findTableOffset(program, "head");
+        long checksumAdjustment = (CHECKSUM_MAGIC - checksum(program, 0, program.length)) & UINT32_MASK;
+        ByteBuffer.wrap(program).putInt(headOffset + HEAD_CHECKSUM_ADJUSTMENT_OFFSET, (int) checksumAdjustment);
+        return program;
+    }
+
+    /*
+     * The notdef glyph, the glyphs of the used codes and the glyphs the composite glyphs are made of.
+     */
+    private BitSet findGlyphs(BitSet usedCodes) {
+        BitSet glyphs = new BitSet(glyphOffsets.length);
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.add(0);
+        for (int code = usedCodes.nextSetBit(0); code >= 0 && code < codeToGlyph.length;
+             code = usedCodes.nextSetBit(code + 1)) {
+            pending.add(codeToGlyph[code]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int glyfOffset = tables.get("glyf")[0];
+        while (!pending.isEmpty()) {
+            int glyph = pending.poll();
+            if (glyph >= glyphOffsets.length - 1 || glyphs.get(glyph)) {
+                continue;
+            }
+            glyphs.set(glyph);
+
+            int start = glyfOffset + glyphOffsets[glyph];
+            if (glyphOffsets[glyph + 1] == glyphOffsets[glyph] || buffer.getShort(start) >= 0) {
+                continue;
+            }
+            // composite glyph, the header is followed by the components
+            int position = start + 10;
+            int flags;
+            do {
+                flags = buffer.getShort(position) & 0xffff;
+                pending.add(buffer.getShort(position + 2) & 0xffff);
+                position += 4 + ((flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2);
+                if ((flags & WE_HAVE_A_SCALE) != 0) {
+                    position += 2;
+                } else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+                    position += 4;
+                } else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0) {
+                    position += 8;
+                }
+            } while ((flags & MORE_COMPONENTS) != 0);
+        }
+        return glyphs;
+    }
+
+    /*
+     * Write the table directory and the tables, aligned to 4 bytes.
+     */
+    private byte[] write(Map<String, byte[]> subsetTables) throws IOException {
+        int numberOfTables = subsetTables.size();
+        int entrySelector = Integer.numberOfTrailingZeros(Integer.highestOneBit(numberOfTables));
+        int searchRange = Integer.highestOneBit(numberOfTables) * TABLE_RECORD_SIZE;
+
+        ByteArrayOutputStream program = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(program);
+        output.writeInt(sfntVersion);
+        output.writeShort(numberOfTables);
+        output.writeShort(searchRange);
+        output.writeShort(entrySelector);
+        output.writeShort(numberOfTables * TABLE_RECORD_SIZE - searchRange);
+
+        int offset = TABLE_DIRECTORY_OFFSET + numberOfTables * TABLE_RECORD_SIZE;
+        for (Map.Entry<String, byte[]> table : subsetTables.entrySet()) {
+            byte[] tableData = table.getValue();
+            output.writeBytes(table.getKey());
+            output.writeInt((int) checksum(tableData, 0, tableData.length));
+            output.writeInt(offset);
+            output.writeInt(tableData.length);
+            offset += align(tableData.length);
+        }
+        for (byte[] tableData : subsetTables.values()) {
+            output.write(tableData);
+            output.write(new byte[align(tableData.length) - tableData.length]);
+        }
+        return program.toByteArray();
+    }
+
+    private static int findTableOffset(byte[] program, String tag) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(program);
+        int numberOfTables = buffer.getShort(4) & 0xffff;
+        for (int i = 0; i < numberOfTables; i++) {
+            int record = TABLE_DIRECTORY_OFFSET + i * TABLE_RECORD_SIZE;
+            if (tag.equals(new String(program, record, 4, "ISO-8859-1"))) {
+                return buffer.getInt(record + 8);
+            }
+        }
+        throw new IOException("The font program has no " + tag + " table");
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    /*
+     * Sum of the big endian 32 bit words, the last word is padded with zeros.
+     */
+    private static long checksum(byte[] bytes, int offset, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i += 4) {
+            long word = 0;
+            for (int j = 0; j < 4; j++) {
+                word = (word << 8) | (i + j < length ? bytes[offset + i + j] & 0xff : 0);
+            }
+            sum = (sum + word) & UINT32_MASK;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,154 @@
+package bma.pdfboxtable.pdf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Least recently used cache of the lines of wrapped cells, keyed by the text, the available width, the font and the
+ * font size. Tables with repeated values (e.g. status codes, amounts, department names) skip measuring these values.
+ *
+ * The lines are kept as start and end offsets in the text, the text itself is referenced by the key and not copied.
+ *
+ * This class is not thread safe, every document should use its own cache.
+ *
+ * @author Bogdan Aldea
+ */
+public class WrappedCellCache {
+    private final int maxEntries;
+    private final Map<Key, int[]> entries;
+    // reused for the lookups, so a hit doesn't allocate
+    private final Key lookupKey = new Key();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries maximum number of cached cells, the least recently used cell is evicted when it is reached
+     */
+    public WrappedCellCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                if (size() > WrappedCellCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+     * @return start and end offsets of the lines, null if the cell is not cached
+     */
+    int[] get(String text, float width, PDFont font, float fontSize) {
+        lookupKey.set(text, width, font, fontSize);
+        int[] lines = entries.get(lookupKey);
+        if (lines != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return lines;
+    }
+
+    void put(String text, float width, PDFont font, float fontSize, int[] lines) {
+        Key key = new Key();
+        key.set(text, width, font, fontSize);
+        entries.put(key, lines);
+    }
+
+    /**
+     * @return maximum number of cached cells
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return number of cached cells
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all the cells, the statistics are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of cells found in the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of cells which had to be wrapped
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of cells evicted from the cache
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 if the cache was not used
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WrappedCellCache[size=%d, hits=%d, misses=%d, evictions=%d, hitRate=%.2f]", size(),
+                hits, misses, evictions, getHitRate());
+    }
+
+    private static final class Key {
+        private String text;
+        private float width;
+        private PDFont font;
+        private float fontSize;
+        private int hash;
+
+        void set(String newText, float newWidth, PDFont newFont, float newFontSize) {
+            text = newText;
+            width = newWidth;
+            font = newFont;
+            fontSize = newFontSize;
+            hash = ((text.hashCode() * 31 + Float.floatToIntBits(width)) * 31 + System.identityHashCode(font)) * 31
+                    + Float.floatToIntBits(fontSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return hash == other.hash && font == other.font && width == other.width && fontSize == other.fontSize
+                    && text.equals(other.text);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package bma.pdfboxtable.table;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -11,14 +13,25 @@ import java.util.List;
  */
 public class Table {
     private static final Color DEFAULT_HEADER_BACKGROUND_COLOR = new Color(224, 224, 224);
+    /**
+     * Sample size which measures all the rows.
+     */
+    public static final int ALL_ROWS = 0;
+    private static final int DEFAULT_AUTO_WIDTH_SAMPLE_SIZE = 1000;
 
     private List<TableColumn> columns;
     private String[][] content;
+    private Iterator<String[]> rows;
     private Float width;
     private boolean drawGrid;
     private boolean drawHeaders;
+    private boolean repeatHeaders;
     private float cellInsidePadding;
     private Color headerBackgroundColor = DEFAULT_HEADER_BACKGROUND_COLOR;
+    private TableLayoutIndex layoutIndex;
+    private boolean autoWidth;
+    private int autoWidthSampleSize = DEFAULT_AUTO_WIDTH_SAMPLE_SIZE;
+    private boolean columnWidthsFitted;
 
     /**
      * @param columns table columns
@@ -30,6 +43,20 @@ public class Table {
         this.content = content;
     }
 
+    /**
+     * Table with content which is read row by row while the table is drawn, so the rows don't have to be kept in
+     * memory (e.g. rows read from a database cursor or from {@code stream.iterator()}).
+     * The rows can be drawn only once.
+     *
+     * @param columns table columns
+     * @param rows table rows
+     */
+    public Table(List<TableColumn> columns, Iterator<String[]> rows) {
+        super();
+        this.columns = columns;
+        this.rows = rows;
+    }
+
     /**
      * @param column table column
      * @param content table content
@@ -87,12 +114,29 @@ public class Table {
     }
 
     /**
-     * @return the content
+     * @return the content, null if the rows are streamed
      */
     public String[][] getContent() {
         return content;
     }
 
+    /**
+     * @return iterator over the table rows
+     */
+    public Iterator<String[]> getRows() {
+        if (rows != null) {
+            return rows;
+        }
+        return Arrays.asList(content).iterator();
+    }
+
+    /**
+     * @return true if the rows are read while the table is drawn
+     */
+    public boolean isStreamed() {
+        return rows != null;
+    }
+
     /**
      * @return the drawGrid
      */
@@ -128,6 +172,23 @@ public class Table {
         this.drawHeaders = drawHeaders;
     }
 
+    /**
+     * @return true if the header row is repeated on each page the table continues on
+     */
+    public boolean isRepeatHeaders() {
+        return repeatHeaders;
+    }
+
+    /**
+     * The header row is laid out and drawn only once, then it is placed on each new page of the table. It is used only
+     * if the headers are drawn.
+     *
+     * @param repeatHeaders true to repeat the header row on each page
+     */
+    public void setRepeatHeaders(boolean repeatHeaders) {
+        this.repeatHeaders = repeatHeaders;
+    }
+
     /**
      * @param cellInsidePadding the cellInsidePadding to set
      */
@@ -164,4 +225,133 @@ public class Table {
         this.headerBackgroundColor = headerBackgroundColor;
     }
 
+    /**
+     * @return the precomputed row heights, null if they were not computed
+     */
+    public TableLayoutIndex getLayoutIndex() {
+        return layoutIndex;
+    }
+
+    /**
+     * @param layoutIndex the precomputed row heights, null to drop them (e.g. after the content changed)
+     */
+    public void setLayoutIndex(TableLayoutIndex layoutIndex) {
+        this.layoutIndex = layoutIndex;
+    }
+
+    /**
+     * @return true if the column widths are computed from the content when the table is drawn
+     */
+    public boolean isAutoWidth() {
+        return autoWidth;
+    }
+
+    /**
+     * When auto width is on, the widths of the columns are computed from the content the first time the table is
+     * drawn or measured, and the available width is distributed between the columns. The widths given to the columns
+     * are replaced.
+     *
+     * @param autoWidth true to compute the column widths from the content
+     */
+    public void setAutoWidth(boolean autoWidth) {
+        this.autoWidth = autoWidth;
+        this.columnWidthsFitted = false;
+    }
+
+    /**
+     * @return number of rows measured to compute the column widths
+     */
+    public int getAutoWidthSampleSize() {
+        return autoWidthSampleSize;
+    }
+
+    /**
+     * Rows measured to compute the column widths. The sample is spread over the whole content, while for streamed rows
+     * the first rows are read ahead and kept in memory until they are drawn.
+     *
+     * @param autoWidthSampleSize number of rows measured, {@link #ALL_ROWS} to measure every row
+     */
+    public void setAutoWidthSampleSize(int autoWidthSampleSize) {
+        this.autoWidthSampleSize = autoWidthSampleSize;
+    }
+
+    /**
+     * @return true if auto width is on and the column widths were not computed yet
+     */
+    public boolean isColumnWidthsPending() {
+        return autoWidth && !columnWidthsFitted;
+    }
+
+    /**
+     * Set the width of every column. The table width and the layout index are computed again.
+     *
+     * @param columnWidths width of each column
+     */
+    public void setColumnWidths(float[] columnWidths) {
+        for (int columnNumber = 0; columnNumber < columnWidths.length; columnNumber++) {
+            columns.get(columnNumber).setWidth(columnWidths[columnNumber]);
+        }
+        width = null;
+        layoutIndex = null;
+        columnWidthsFitted = true;
+    }
+
+    /**
+     * Rows used to compute the column widths. For streamed rows the sample is read ahead and it is still returned by
+     * {@link #getRows()}, so no row is lost.
+     *
+     * @param sampleSize number of rows, {@link #ALL_ROWS} for all the rows
+     * @return the sample rows
+     */
+    public List<String[]> sampleRows(int sampleSize) {
+        if (rows == null) {
+            if (sampleSize <= ALL_ROWS || sampleSize >= content.length) {
+                return Arrays.asList(content);
+            }
+            // evenly spaced, so a sorted content is sampled from start to end
+            List<String[]> sample = new ArrayList<>(sampleSize);
+            for (int i = 0; i < sampleSize; i++) {
+                sample.add(content[(int) ((long) i * content.length / sampleSize)]);
+            }
+            return sample;
+        }
+
+        List<String[]> sample = new ArrayList<>();
+        while (rows.hasNext() && (sampleSize <= ALL_ROWS || sample.size() < sampleSize)) {
+            sample.add(rows.next());
+        }
+        rows = new ReadAheadIterator(sample.iterator(), rows);
+        return sample;
+    }
+
+    /*
+     * Rows which were read ahead, followed by the rest of the rows.
+     */
+    private static final class ReadAheadIterator implements Iterator<String[]> {
+        private Iterator<String[]> readAhead;
+        private final Iterator<String[]> rest;
+
+        private ReadAheadIterator(Iterator<String[]> readAhead, Iterator<String[]> rest) {
+            this.readAhead = readAhead;
+            this.rest = rest;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (readAhead != null && readAhead.hasNext()) || rest.hasNext();
+        }
+
+        @Override
+        public String[] next() {
+            if (readAhead != null) {
+                if (readAhead.hasNext()) {
+                    return readAhead.next();
+                }
+                // let the sample be collected
+                readAhead = null;
+            }
+            return rest.next();
+        }
+    }
+
 }
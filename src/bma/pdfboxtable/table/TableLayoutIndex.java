@@ -0,0 +1,201 @@
+package bma.pdfboxtable.table;
+
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Precomputed heights of the rows of a {@link Table}, used to find the page breaks of the table without drawing it.
+ *
+ * The index is valid only for the fonts and font size it was computed with, and it has to be computed again if the
+ * content or the columns of the table change.
+ *
+ * @author Bogdan Aldea
+ */
+public class TableLayoutIndex {
+    /**
+     * Page break value for the header row.
+     */
+    public static final int HEADER_ROW = -1;
+
+    private final PDFont rowFont;
+    private final PDFont headerFont;
+    private final float fontSize;
+    private final boolean headers;
+    private final boolean repeatHeaders;
+    private final float headerHeight;
+    private final float[] rowHeights;
+    // distance from the top of the table to the top of each row, the last entry is the height of the table
+    private final double[] rowOffsets;
+
+    // page breaks of the last page geometry
+    private float pageBreaksStartY = Float.NaN;
+    private float pageBreaksTopY = Float.NaN;
+    private float pageBreaksBottomY = Float.NaN;
+    private int[] pageBreaks;
+
+    /**
+     * @param rowFont font of the rows
+     * @param headerFont font of the header
+     * @param fontSize font size
+     * @param headers true if the header row is drawn
+     * @param headerHeight height of the header row, ignored if there is no header row
+     * @param rowHeights height of each row, the array is not copied
+     */
+    public TableLayoutIndex(PDFont rowFont, PDFont headerFont, float fontSize, boolean headers, float headerHeight,
+                            float[] rowHeights) {
+        this(rowFont, headerFont, fontSize, headers, false, headerHeight, rowHeights);
+    }
+
+    /**
+     * @param rowFont font of the rows
+     * @param headerFont font of the header
+     * @param fontSize font size
+     * @param headers true if the header row is drawn
+     * @param repeatHeaders true if the header row is repeated on each new page, ignored if there is no header row
+     * @param headerHeight height of the header row, ignored if there is no header row
+     * @param rowHeights height of each row, the array is not copied
+     */
+    public TableLayoutIndex(PDFont rowFont, PDFont headerFont, float fontSize, boolean headers, boolean repeatHeaders,
+                            float headerHeight, float[] rowHeights) {
+        this.rowFont = rowFont;
+        this.headerFont = headerFont;
+        this.fontSize = fontSize;
+        this.headers = headers;
+        this.repeatHeaders = headers && repeatHeaders;
+        this.headerHeight = headers ? headerHeight : 0;
+        this.rowHeights = rowHeights;
+
+        // double, so the offsets stay exact for tables with millions of rows
+        rowOffsets = new double[rowHeights.length + 1];
+        rowOffsets[0] = this.headerHeight;
+        for (int rowNumber = 0; rowNumber < rowHeights.length; rowNumber++) {
+            rowOffsets[rowNumber + 1] = rowOffsets[rowNumber] + rowHeights[rowNumber];
+        }
+    }
+
+    /**
+     * @param aRowFont font of the rows
+     * @param aHeaderFont font of the header
+     * @param aFontSize font size
+     * @return true if the index was computed with these fonts
+     */
+    public boolean isComputedFor(PDFont aRowFont, PDFont aHeaderFont, float aFontSize) {
+        return rowFont == aRowFont && headerFont == aHeaderFont && fontSize == aFontSize;
+    }
+
+    /**
+     * @return true if the header row is drawn
+     */
+    public boolean hasHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return true if the header row is repeated on each new page
+     */
+    public boolean isRepeatHeaders() {
+        return repeatHeaders;
+    }
+
+    /**
+     * @return height of the header row, 0 if there is no header row
+     */
+    public float getHeaderHeight() {
+        return headerHeight;
+    }
+
+    /**
+     * @return number of rows, without the header row
+     */
+    public int getNumberOfRows() {
+        return rowHeights.length;
+    }
+
+    /**
+     * @param rowNumber row number
+     * @return height of the row
+     */
+    public float getRowHeight(int rowNumber) {
+        return rowHeights[rowNumber];
+    }
+
+    /**
+     * @param rowNumber row number
+     * @return distance from the top of the table to the top of the row, as if the table was on a single page
+     */
+    public double getRowOffset(int rowNumber) {
+        return rowOffsets[rowNumber];
+    }
+
+    /**
+     * @return height of the table, as if the table was on a single page
+     */
+    public double getHeight() {
+        return rowOffsets[rowHeights.length];
+    }
+
+    /**
+     * Find the rows which start a new page. The rows are placed the same way the document draws them: a row which
+     * doesn't fit above the bottom of the page goes on the next page, just below the top of the page, or below the
+     * repeated header row.
+     *
+     * The page breaks of the last geometry are kept, so asking again for the same geometry is free.
+     *
+     * @param startY position of the top of the table on the first page
+     * @param pageTopY top of the content on a new page
+     * @param pageBottomY bottom of the content on a page
+     * @return the numbers of the rows which start a new page, {@link #HEADER_ROW} if the header row starts a new page
+     */
+    public int[] getPageBreaks(float startY, float pageTopY, float pageBottomY) {
+        return findPageBreaks(startY, pageTopY, pageBottomY).clone();
+    }
+
+    /**
+     * @param startY position of the top of the table on the first page
+     * @param pageTopY top of the content on a new page
+     * @param pageBottomY bottom of the content on a page
+     * @return number of pages spanned by the table, the first page included
+     */
+    public int getNumberOfPages(float startY, float pageTopY, float pageBottomY) {
+        return findPageBreaks(startY, pageTopY, pageBottomY).length + 1;
+    }
+
+    private int[] findPageBreaks(float startY, float pageTopY, float pageBottomY) {
+        if (pageBreaks == null || startY != pageBreaksStartY || pageTopY != pageBreaksTopY
+                || pageBottomY != pageBreaksBottomY) {
+            pageBreaks = calculatePageBreaks(startY, pageTopY, pageBottomY);
+            pageBreaksStartY = startY;
+            pageBreaksTopY = pageTopY;
+            pageBreaksBottomY = pageBottomY;
+        }
+        return pageBreaks;
+    }
+
+    /*
+     * Same float arithmetic as the drawing, so the page breaks are exactly the ones of the document.
+     */
+    private int[] calculatePageBreaks(float startY, float pageTopY, float pageBottomY) {
+        int[] breaks = new int[16];
+        int numberOfBreaks = 0;
+        float positionY = startY;
+
+        for (int rowNumber = headers ? HEADER_ROW : 0; rowNumber < rowHeights.length; rowNumber++) {
+            float rowHeight = rowNumber == HEADER_ROW ? headerHeight : rowHeights[rowNumber];
+            if (positionY - rowHeight < pageBottomY) {
+                if (numberOfBreaks == breaks.length) {
+                    breaks = Arrays.copyOf(breaks, 2 * breaks.length);
+                }
+                breaks[numberOfBreaks++] = rowNumber;
+                if (repeatHeaders && rowNumber != HEADER_ROW) {
+                    positionY = pageTopY - headerHeight - headerHeight;
+                } else {
+                    positionY = pageTopY - rowHeight;
+                }
+            }
+            positionY = positionY - rowHeight;
+        }
+
+        return Arrays.copyOf(breaks, numberOfBreaks);
+    }
+}
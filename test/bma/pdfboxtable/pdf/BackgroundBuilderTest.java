@@ -0,0 +1,75 @@
+package bma.pdfboxtable.pdf;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The backgrounds must be drawn in the order they were added, with the consecutive ones merged.
+ *
+ * @author Bogdan Aldea
+ */
+public class BackgroundBuilderTest {
+    private static final Pattern RECTANGLE = Pattern.compile("(\\S+) (\\S+) (\\S+) (\\S+) re");
+    private static final Color COLUMN_COLOR = Color.BLUE;
+    private static final Color HEADER_COLOR = Color.LIGHT_GRAY;
+
+    @Test
+    public void columnOnConsecutiveRowsIsOneRectangle() throws IOException {
+        BackgroundBuilder builder = new BackgroundBuilder();
+        builder.addRectangle(COLUMN_COLOR, 20, 800, 100, 20);
+        builder.addRectangle(COLUMN_COLOR, 120, 800, 50, 20);
+        builder.addRectangle(COLUMN_COLOR, 20, 780, 100, 20);
+        builder.addRectangle(COLUMN_COLOR, 120, 780, 50, 20);
+        builder.addRectangle(COLUMN_COLOR, 20, 760, 100, 20);
+
+        assertEquals(Arrays.asList("20 740 100 60", "120 760 50 40"), draw(builder));
+    }
+
+    @Test
+    public void columnOverridesHeaderOfTableDrawnBelow() throws IOException {
+        BackgroundBuilder builder = new BackgroundBuilder();
+        // first table: its column on two rows
+        builder.addRectangle(COLUMN_COLOR, 20, 800, 100, 20);
+        builder.addRectangle(COLUMN_COLOR, 20, 780, 100, 20);
+        // second table right below, with the same column: header background, then the column over it
+        builder.addRectangle(HEADER_COLOR, 20, 760, 300, 20);
+        builder.addRectangle(COLUMN_COLOR, 20, 760, 100, 20);
+        builder.addRectangle(COLUMN_COLOR, 20, 740, 100, 20);
+
+        assertEquals(Arrays.asList("20 760 100 40", "20 740 300 20", "20 720 100 40"), draw(builder));
+    }
+
+    /*
+     * @return x, y, width and height of the drawn rectangles, in order
+     */
+    private static List<String> draw(BackgroundBuilder builder) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                builder.draw(contentStream);
+            }
+
+            String content = new String(page.getContents().getByteArray(), StandardCharsets.ISO_8859_1);
+            List<String> rectangles = new ArrayList<>();
+            Matcher matcher = RECTANGLE.matcher(content);
+            while (matcher.find()) {
+                rectangles.add(matcher.group(1) + " " + matcher.group(2) + " " + matcher.group(3) + " "
+                        + matcher.group(4));
+            }
+            return rectangles;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bma.pdfboxtable.table.Table;
+import bma.pdfboxtable.table.TableColumn;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A document created from a template must embed each font once, whether it is used by the static layers, by the text
+ * drawn on its pages or by both, and it must not depend on the prototype, which is closed before the document is
+ * saved.
+ *
+ * @author Bogdan Aldea
+ */
+public class DocumentTemplateTest {
+    private static final int ROWS = 300;
+    private static final String TRUE_TYPE_FONT_NAME = "DejaVuSans";
+    private static final Path TRUE_TYPE_FONT_FILE = Paths.get("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @Rule
+    public final TemporaryFolder scratchDirectory = new TemporaryFolder();
+
+    @Test
+    public void documentEmbedsEachFontOnce() throws Exception {
+        Assume.assumeTrue("The font is not installed: " + TRUE_TYPE_FONT_FILE, Files.exists(TRUE_TYPE_FONT_FILE));
+        FontRegistry fontRegistry = new FontRegistry();
+        fontRegistry.registerTrueTypeFont(TRUE_TYPE_FONT_NAME, TRUE_TYPE_FONT_FILE);
+
+        DocumentTemplate template = createTemplate(fontRegistry);
+        Map<String, Integer> fonts = countFonts(draw(template));
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("Font " + TRUE_TYPE_FONT_NAME, 1);
+        expected.put("FontFile2 " + TRUE_TYPE_FONT_NAME, 1);
+        expected.put("Font Helvetica", 1);
+        expected.put("Font Helvetica-Bold", 1);
+        assertEquals(expected, fonts);
+    }
+
+    /*
+     * The prototype keeps its streams in a scratch file, which is deleted when it is closed.
+     */
+    private DocumentTemplate createTemplate(FontRegistry fontRegistry) throws IOException {
+        PageablePdf prototype = new PageablePdf(PDPage.PAGE_SIZE_A4.getWidth(), PDPage.PAGE_SIZE_A4.getHeight(),
+                scratchDirectory.getRoot());
+        try {
+            prototype.setFontRegistry(fontRegistry);
+            PDFont font = fontRegistry.createTrueTypeFont(TRUE_TYPE_FONT_NAME, prototype);
+            prototype.setHeadingFont(font);
+            prototype.setFooterFont(font);
+            prototype.setFooterLines(Arrays.asList("Template footer"));
+            prototype.setIncludePageNumber(true);
+            prototype.setContentLeftPadding(20f);
+            prototype.setContentTopPadding(20f);
+            prototype.setContentBottomPadding(40f);
+            prototype.setCurrentPositionAtStartOfThePage();
+            prototype.drawHeading("Report");
+
+            Table table = new Table(Arrays.asList(new TableColumn("Name", 200f), new TableColumn("Value", 100f)),
+                    new String[0][]);
+            table.setDrawHeaders(true);
+            table.setRepeatHeaders(true);
+            return new DocumentTemplate(prototype, table);
+        } finally {
+            prototype.close();
+        }
+    }
+
+    private static byte[] draw(DocumentTemplate template) throws IOException, COSVisitorException {
+        String[][] rows = new String[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new String[] {"Row " + i, String.valueOf(i * 7)};
+        }
+
+        PageablePdf pdf = template.createDocument();
+        try {
+            pdf.drawTable(template.createTable(rows));
+            pdf.drawHeading("Summary");
+            pdf.closeDocument();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            pdf.save(output);
+            return output.toByteArray();
+        } finally {
+            pdf.close();
+        }
+    }
+
+    /*
+     * @return number of font dictionaries and of embedded TrueType programs in the saved document, by font name
+     */
+    private static Map<String, Integer> countFonts(byte[] pdf) throws IOException {
+        Map<String, Integer> fonts = new HashMap<>();
+        try (PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf))) {
+            List<COSDictionary> fontDescriptors = new ArrayList<>();
+            for (COSObject object : document.getDocument().getObjects()) {
+                COSBase base = object.getObject();
+                if (!(base instanceof COSDictionary)) {
+                    continue;
+                }
+                COSDictionary dictionary = (COSDictionary) base;
+                if (COSName.FONT.equals(dictionary.getItem(COSName.TYPE))) {
+                    fonts.merge("Font " + dictionary.getNameAsString(COSName.BASE_FONT), 1, Integer::sum);
+                } else if (COSName.FONT_DESC.equals(dictionary.getItem(COSName.TYPE))) {
+                    fontDescriptors.add(dictionary);
+                }
+            }
+            for (COSDictionary fontDescriptor : fontDescriptors) {
+                if (fontDescriptor.getDictionaryObject(COSName.FONT_FILE2) != null) {
+                    fonts.merge("FontFile2 " + fontDescriptor.getNameAsString(COSName.FONT_NAME), 1, Integer::sum);
+                }
+            }
+        }
+        return fonts;
+    }
+}
@@ -0,0 +1,47 @@
+package bma.pdfboxtable.pdf;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The bytes counted must be the bytes of the page content, including the names written by {@link
+ * org.apache.pdfbox.pdmodel.edit.PDPageContentStream} without going through its raw commands.
+ *
+ * @author Bogdan Aldea
+ */
+public class MeteredPageContentStreamTest {
+
+    @Test
+    public void bytesAreTheLengthOfTheContent() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            MeteredPageContentStream contentStream = new MeteredPageContentStream(document, page);
+            try {
+                contentStream.setNonStrokingColorSpace(PDDeviceRGB.INSTANCE);
+                contentStream.setNonStrokingColor(Color.BLUE);
+                contentStream.fillRect(20, 20, 100, 20);
+                contentStream.beginText();
+                contentStream.setFont(PDType1Font.HELVETICA, 10);
+                contentStream.moveTextPositionByAmount(20, 50);
+                contentStream.drawString("Metered");
+                contentStream.endText();
+                contentStream.drawXObject(new PDXObjectForm(new PDStream(document)), 20, 80, 10, 10);
+            } finally {
+                contentStream.close();
+            }
+
+            assertEquals(page.getContents().getByteArray().length, contentStream.getBytes());
+            assertEquals(13, contentStream.getOperators());
+        }
+    }
+}
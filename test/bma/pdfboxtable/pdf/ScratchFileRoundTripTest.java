@@ -0,0 +1,216 @@
+package bma.pdfboxtable.pdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import bma.pdfboxtable.table.Table;
+import bma.pdfboxtable.table.TableColumn;
+import bma.pdfboxtable.table.TextAlignment;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.util.PDFTextStripper;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A document drawn with a scratch file must be saved with the same content as the same document drawn in memory.
+ *
+ * With a scratch file every stream is written from the end of the file, so a stream created while a page content
+ * stream is open and not through {@link PageablePdf#createStream()} is overwritten by the page content. The documents
+ * are drawn through every path which creates streams in the middle of a page: the repeated table header, parallel
+ * layout, parallel pages and a TrueType font of the registry created after the first page is started.
+ *
+ * @author Bogdan Aldea
+ */
+public class ScratchFileRoundTripTest {
+    private static final int ROWS = 1500;
+    private static final String TRUE_TYPE_FONT_NAME = "DejaVuSans";
+    private static final Path TRUE_TYPE_FONT_FILE = Paths.get("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf");
+
+    @Rule
+    public final TemporaryFolder scratchDirectory = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void sequential() throws Exception {
+        assertSameAsInMemory(false, false, null);
+    }
+
+    @Test
+    public void parallelLayout() throws Exception {
+        assertSameAsInMemory(true, false, null);
+    }
+
+    @Test
+    public void parallelPages() throws Exception {
+        assertSameAsInMemory(false, true, null);
+    }
+
+    @Test
+    public void parallelLayoutAndPages() throws Exception {
+        assertSameAsInMemory(true, true, null);
+    }
+
+    @Test
+    public void registryTrueTypeFont() throws Exception {
+        Assume.assumeTrue("The font is not installed: " + TRUE_TYPE_FONT_FILE, Files.exists(TRUE_TYPE_FONT_FILE));
+        FontRegistry fontRegistry = new FontRegistry();
+        fontRegistry.registerTrueTypeFont(TRUE_TYPE_FONT_NAME, TRUE_TYPE_FONT_FILE);
+
+        assertSameAsInMemory(true, true, fontRegistry);
+    }
+
+    private void assertSameAsInMemory(boolean parallelLayout, boolean parallelPages, FontRegistry fontRegistry)
+            throws IOException, COSVisitorException {
+        byte[] inMemory = draw(new PageablePdf(PDPage.PAGE_SIZE_A4.getWidth(), PDPage.PAGE_SIZE_A4.getHeight()),
+                parallelLayout, parallelPages, fontRegistry);
+        byte[] scratchFile = draw(new PageablePdf(PDPage.PAGE_SIZE_A4.getWidth(), PDPage.PAGE_SIZE_A4.getHeight(),
+                scratchDirectory.getRoot()), parallelLayout, parallelPages, fontRegistry);
+
+        List<String> expectedPages = readPages(inMemory);
+        assertTrue("The table should continue on more pages: " + expectedPages.size(), expectedPages.size() > 3);
+        assertTrue(expectedPages.get(expectedPages.size() - 1).contains("Row " + (ROWS - 1)));
+        assertEquals(expectedPages, readPages(scratchFile));
+    }
+
+    private byte[] draw(PageablePdf pdf, boolean parallelLayout, boolean parallelPages, FontRegistry fontRegistry)
+            throws IOException, COSVisitorException {
+        try {
+            pdf.setFooterLines(Arrays.asList("Scratch file round trip"));
+            pdf.setIncludePageNumber(true);
+            pdf.setContentLeftPadding(20f);
+            pdf.setContentTopPadding(20f);
+            pdf.setContentBottomPadding(40f);
+            pdf.setCurrentPositionAtStartOfThePage();
+            if (parallelLayout) {
+                pdf.setLayoutPool(pool);
+            }
+            if (parallelPages) {
+                pdf.setPagePool(pool);
+            }
+
+            // the heading starts the first page, so the font below is created while its content stream is open
+            pdf.drawHeading("Rows");
+            if (fontRegistry != null) {
+                pdf.setFontRegistry(fontRegistry);
+                PDFont font = fontRegistry.createTrueTypeFont(TRUE_TYPE_FONT_NAME, pdf);
+                pdf.setCurrentFont(font);
+                pdf.setFontBold(font);
+            }
+            pdf.drawTable(createTable());
+            pdf.closeDocument();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            pdf.save(output);
+            return output.toByteArray();
+        } finally {
+            pdf.close();
+        }
+    }
+
+    private static Table createTable() {
+        List<TableColumn> columns = new ArrayList<>();
+        columns.add(new TableColumn("Name", 200f));
+        columns.add(new TableColumn("Value", 100f, TextAlignment.RIGHT));
+
+        Iterator<String[]> rows = new Iterator<String[]>() {
+            private int rowNumber;
+
+            @Override
+            public boolean hasNext() {
+                return rowNumber < ROWS;
+            }
+
+            @Override
+            public String[] next() {
+                return new String[] {"Row " + rowNumber, String.valueOf(rowNumber++ * 7)};
+            }
+        };
+
+        Table table = new Table(columns, rows);
+        table.setDrawHeaders(true);
+        table.setRepeatHeaders(true);
+        table.setDrawGrid(true);
+        table.setCellInsidePadding(3f);
+        return table;
+    }
+
+    /*
+     * The text of each page, including the forms placed on it, and the checksums of its content, fonts and forms. An
+     * overwritten font program is not seen in the text, the text is taken from the encoding of the font.
+     */
+    private static List<String> readPages(byte[] pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(new ByteArrayInputStream(pdf))) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            List<?> allPages = document.getDocumentCatalog().getAllPages();
+            List<String> pages = new ArrayList<>();
+            for (int i = 1; i <= allPages.size(); i++) {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                StringBuilder page = new StringBuilder(stripper.getText(document));
+
+                PDPage pdPage = (PDPage) allPages.get(i - 1);
+                page.append("content ").append(checksum(pdPage.getContents())).append('\n');
+                PDResources resources = pdPage.findResources();
+                for (Map.Entry<String, PDFont> font : new TreeMap<>(resources.getFonts()).entrySet()) {
+                    PDFontDescriptor descriptor = font.getValue().getFontDescriptor();
+                    PDStream fontFile = descriptor instanceof PDFontDescriptorDictionary
+                            ? ((PDFontDescriptorDictionary) descriptor).getFontFile2() : null;
+                    page.append("font ").append(font.getKey()).append(' ').append(checksum(fontFile)).append('\n');
+                }
+                for (Map.Entry<String, PDXObject> xObject : new TreeMap<>(resources.getXObjects()).entrySet()) {
+                    page.append("xobject ").append(xObject.getKey()).append(' ')
+                            .append(checksum(xObject.getValue().getPDStream())).append('\n');
+                }
+                pages.add(page.toString());
+            }
+            return pages;
+        }
+    }
+
+    private static long checksum(PDStream stream) throws IOException {
+        if (stream == null) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(stream.getByteArray());
+        return crc.getValue();
+    }
+}